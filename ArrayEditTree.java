@@ -0,0 +1,121 @@
+package editortrees;
+
+import java.util.Arrays;
+
+/**
+ * An IndexedEditTree that stores data, left, right, rank and balance in
+ * parallel primitive arrays indexed by node id instead of a graph of Node
+ * objects. A document is then a handful of large arrays, which the garbage
+ * collector never has to trace node by node, and neighboring nodes tend to sit
+ * next to each other in memory. The arrays double when they are full.
+ *
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+public class ArrayEditTree extends IndexedEditTree {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private char[] data;
+	private int[] left, right; // ids of the subtrees
+	private int[] rank; // inorder position of each node within its own subtree
+	private byte[] balance;
+
+	/**
+	 * Construct an empty tree
+	 */
+	public ArrayEditTree() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Construct an empty tree with room for capacity nodes before the arrays grow
+	 *
+	 * @param capacity
+	 */
+	public ArrayEditTree(int capacity) {
+		// one extra slot for the null node
+		int slots = Math.max(capacity, 1) + 1;
+		this.data = new char[slots];
+		this.left = new int[slots];
+		this.right = new int[slots];
+		this.rank = new int[slots];
+		this.balance = new byte[slots];
+	}
+
+	/**
+	 * Create a tree whose toString is s in O(N) time, with the same shape as
+	 * EditTree(String) builds
+	 *
+	 * @param s
+	 */
+	public ArrayEditTree(String s) {
+		this(s.length());
+		this.fill(s);
+	}
+
+	@Override
+	char data(int node) {
+		return this.data[node];
+	}
+
+	@Override
+	void setData(int node, char ch) {
+		this.data[node] = ch;
+	}
+
+	@Override
+	int left(int node) {
+		return this.left[node];
+	}
+
+	@Override
+	void setLeft(int node, int left) {
+		this.left[node] = left;
+	}
+
+	@Override
+	int right(int node) {
+		return this.right[node];
+	}
+
+	@Override
+	void setRight(int node, int right) {
+		this.right[node] = right;
+	}
+
+	@Override
+	int rank(int node) {
+		return this.rank[node];
+	}
+
+	@Override
+	void setRank(int node, int rank) {
+		this.rank[node] = rank;
+	}
+
+	@Override
+	byte balance(int node) {
+		return this.balance[node];
+	}
+
+	@Override
+	void setBalance(int node, byte balance) {
+		this.balance[node] = balance;
+	}
+
+	@Override
+	int capacity() {
+		return this.data.length;
+	}
+
+	@Override
+	void grow() {
+		int slots = this.data.length * 2;
+		this.data = Arrays.copyOf(this.data, slots);
+		this.left = Arrays.copyOf(this.left, slots);
+		this.right = Arrays.copyOf(this.right, slots);
+		this.rank = Arrays.copyOf(this.rank, slots);
+		this.balance = Arrays.copyOf(this.balance, slots);
+	}
+}
@@ -0,0 +1,373 @@
+package editortrees;
+
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A caret in an EditTree that keeps the path from the root down to the
+ * character after it. Moving to the next or previous character only walks
+ * between neighboring nodes, which is O(1) amortized over a scan, and inserting
+ * or deleting at the caret reuses the path instead of searching from the root
+ * again. The path is only walked down again from the level a rotation changed.
+ * moveTo climbs only as far as the lowest ancestor whose subtree holds the new
+ * position before walking down, so moving a short distance is cheap.
+ *
+ * As an iterator it hands out the characters from the caret on. Changing the
+ * tree other than through this cursor makes the cursor fail with a
+ * ConcurrentModificationException.
+ *
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+public class CharCursor implements PrimitiveIterator.OfInt {
+
+	private final EditTree tree;
+	// path[depth] holds the character after the caret, and wentLeft says which
+	// way the path goes from each level above it. depth is -1 at the end.
+	private final Node[] path = new Node[Node.MAX_HEIGHT];
+	private final boolean[] wentLeft = new boolean[Node.MAX_HEIGHT];
+	// the subtree at path[level] holds the positions lo[level]..hi[level]-1
+	private final int[] lo = new int[Node.MAX_HEIGHT];
+	private final int[] hi = new int[Node.MAX_HEIGHT];
+	private int depth;
+	private int pos;
+	private int expectedModCount;
+
+	/**
+	 * Use EditTree.cursor(pos) to make a cursor.
+	 *
+	 * @param tree
+	 * @param pos
+	 */
+	CharCursor(EditTree tree, int pos) {
+		this.tree = tree;
+		this.pos = pos;
+		this.expectedModCount = tree.modCount;
+		this.reseek(0);
+	}
+
+	/**
+	 * @return the number of characters before the caret
+	 */
+	public int position() {
+		return this.pos;
+	}
+
+	/**
+	 * Moves the caret to before the character at pos. It climbs from the current
+	 * node to the lowest ancestor whose subtree holds pos and walks down from
+	 * there, so a move of d characters usually costs O(log d).
+	 *
+	 * @param pos number of characters before the caret. Valid positions range
+	 *            from 0 to the size of the tree, inclusive.
+	 * @throws IndexOutOfBoundsException if pos is negative or too large for the
+	 *                                   tree.
+	 */
+	public void moveTo(int pos) throws IndexOutOfBoundsException {
+		this.checkForModification();
+		if (pos < 0 || pos > this.tree.size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (pos == this.pos) {
+			return;
+		} else if (pos == this.pos + 1 && this.depth >= 0) {
+			this.nextChar();
+			return;
+		} else if (pos == this.pos - 1) {
+			this.previousChar();
+			return;
+		}
+		this.pos = pos;
+		if (this.depth < 0 || pos == this.tree.size()) {
+			this.reseek(0);
+			return;
+		}
+		int level = this.depth;
+		while (level > 0 && (pos < this.lo[level] || pos >= this.hi[level])) {
+			level--;
+		}
+		this.seekFrom(level);
+	}
+
+	/**
+	 * @return the character after the caret, without moving the caret
+	 * @throws NoSuchElementException if the caret is at the end
+	 */
+	public char peek() {
+		if (!this.hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return this.path[this.depth].data;
+	}
+
+	@Override
+	public boolean hasNext() {
+		this.checkForModification();
+		return this.depth >= 0;
+	}
+
+	/**
+	 * @return true iff there is a character before the caret
+	 */
+	public boolean hasPrevious() {
+		this.checkForModification();
+		return this.pos > 0;
+	}
+
+	@Override
+	public int nextInt() {
+		return this.nextChar();
+	}
+
+	/**
+	 * Moves the caret past the next character.
+	 *
+	 * @return the character the caret moved past
+	 * @throws NoSuchElementException if the caret is at the end
+	 */
+	public char nextChar() {
+		if (!this.hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Node node = this.path[this.depth];
+		if (node.right != Node.NULL_NODE) {
+			// the successor is the first node of the right subtree
+			this.descend(this.depth, node.right, false);
+			this.depth = this.pushSpine(true, this.depth + 1);
+		} else {
+			// the successor is the nearest ancestor whose left subtree we are in
+			while (this.depth > 0 && !this.wentLeft[this.depth - 1]) {
+				this.depth--;
+			}
+			this.depth--;
+		}
+		this.pos++;
+		return node.data;
+	}
+
+	/**
+	 * Moves the caret back before the previous character.
+	 *
+	 * @return the character the caret moved back over
+	 * @throws NoSuchElementException if the caret is at the start
+	 */
+	public char previousChar() {
+		if (!this.hasPrevious()) {
+			throw new NoSuchElementException();
+		}
+		if (this.depth < 0) {
+			// the last node is at the end of the root's right spine
+			this.setRoot();
+			this.depth = this.pushSpine(false, 0);
+		} else if (this.path[this.depth].left != Node.NULL_NODE) {
+			this.descend(this.depth, this.path[this.depth].left, true);
+			this.depth = this.pushSpine(false, this.depth + 1);
+		} else {
+			while (this.wentLeft[this.depth - 1]) {
+				this.depth--;
+			}
+			this.depth--;
+		}
+		this.pos--;
+		return this.path[this.depth].data;
+	}
+
+	/**
+	 * Adds ch at the caret, leaving the caret after it.
+	 *
+	 * @param ch
+	 */
+	public void insert(char ch) {
+		this.checkForModification();
+		// the new leaf goes at the end of the left subtree of the node after the
+		// caret, or at the end of the tree
+		int leafDepth;
+		if (this.depth < 0) {
+			leafDepth = 0;
+			if (this.tree.root != Node.NULL_NODE) {
+				this.setRoot();
+				leafDepth = this.pushSpine(false, 0) + 1;
+				this.wentLeft[leafDepth - 1] = false;
+			}
+		} else if (this.path[this.depth].left == Node.NULL_NODE) {
+			this.wentLeft[this.depth] = true;
+			leafDepth = this.depth + 1;
+		} else {
+			this.descend(this.depth, this.path[this.depth].left, true);
+			leafDepth = this.pushSpine(false, this.depth + 1) + 1;
+			this.wentLeft[leafDepth - 1] = false;
+		}
+		// every node the leaf ends up left of gains one in rank
+		for (int level = 0; level < leafDepth; level++) {
+			if (this.wentLeft[level]) {
+				this.path[level].rank++;
+			}
+		}
+		this.tree.loadPath(this.path, this.wentLeft, leafDepth);
+		int rotated = this.tree.addBelow(leafDepth, new Node(ch), this.pos);
+		this.expectedModCount = this.tree.modCount;
+		this.pos++;
+		// the leaf is in the subtree of every node on the path
+		for (int level = 0; level <= this.depth; level++) {
+			this.hi[level]++;
+		}
+		if (this.depth >= 0 && rotated <= this.depth) {
+			// the node after the caret is still in the rotated subtree
+			this.reseek(rotated);
+		}
+	}
+
+	/**
+	 * Deletes the character after the caret.
+	 *
+	 * @return the deleted character
+	 * @throws IndexOutOfBoundsException if the caret is at the end
+	 */
+	public char delete() {
+		if (!this.hasNext()) {
+			throw new IndexOutOfBoundsException();
+		}
+		Node node = this.path[this.depth];
+		char deleted = node.data;
+		boolean nodeStays = node.left != Node.NULL_NODE && node.right != Node.NULL_NODE;
+		boolean rightChildMovesUp = !nodeStays && node.right != Node.NULL_NODE;
+		for (int level = 0; level < this.depth; level++) {
+			if (this.wentLeft[level]) {
+				this.path[level].rank--;
+			}
+		}
+		this.tree.loadPath(this.path, this.wentLeft, this.depth + 1);
+		int rotated = this.tree.removeAt(this.depth, this.pos);
+		this.expectedModCount = this.tree.modCount;
+		for (int level = 0; level <= this.depth; level++) {
+			this.hi[level]--;
+		}
+		if (this.pos == this.tree.size()) {
+			this.depth = -1;
+		} else if (rotated > this.depth || (rotated == this.depth && !nodeStays)) {
+			// nothing above the caret moved
+			if (rightChildMovesUp) {
+				this.path[this.depth] = node.right;
+			} else if (!nodeStays) {
+				while (!this.wentLeft[this.depth - 1]) {
+					this.depth--;
+				}
+				this.depth--;
+			}
+		} else if (nodeStays || rightChildMovesUp) {
+			// the next character is still in the rotated subtree
+			this.reseek(rotated);
+		} else {
+			this.reseek(0);
+		}
+		return deleted;
+	}
+
+	/**
+	 * @return true iff the tree was changed other than through this cursor
+	 */
+	boolean isStale() {
+		return this.tree.modCount != this.expectedModCount;
+	}
+
+	/**
+	 * Catches up with changes made to the tree other than through this cursor by
+	 * walking down from the root to pos.
+	 *
+	 * @param pos
+	 * @throws IndexOutOfBoundsException if pos is negative or too large for the
+	 *                                   tree.
+	 */
+	void resync(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > this.tree.size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		this.expectedModCount = this.tree.modCount;
+		this.pos = pos;
+		this.reseek(0);
+	}
+
+	/**
+	 * Keeps path[0..level-1], takes whatever subtree now hangs at level and walks
+	 * down it to the node at pos, which must be in that subtree.
+	 *
+	 * @param level
+	 */
+	private void reseek(int level) {
+		if (this.pos == this.tree.size()) {
+			this.depth = -1;
+			return;
+		}
+		if (level == 0) {
+			this.setRoot();
+		} else {
+			Node parent = this.path[level - 1];
+			this.descend(level - 1, this.wentLeft[level - 1] ? parent.left : parent.right, this.wentLeft[level - 1]);
+		}
+		this.seekFrom(level);
+	}
+
+	/**
+	 * Walks down from path[level] to the node at pos, which must be in its
+	 * subtree.
+	 *
+	 * @param level
+	 */
+	private void seekFrom(int level) {
+		this.depth = level;
+		Node current = this.path[level];
+		while (this.pos != this.lo[this.depth] + current.rank) {
+			if (this.pos > this.lo[this.depth] + current.rank) {
+				this.descend(this.depth, current.right, false);
+			} else {
+				this.descend(this.depth, current.left, true);
+			}
+			this.depth++;
+			current = this.path[this.depth];
+		}
+	}
+
+	private void setRoot() {
+		this.path[0] = this.tree.root;
+		this.lo[0] = 0;
+		this.hi[0] = this.tree.size();
+	}
+
+	/**
+	 * Makes child path[level+1], on the given side of path[level].
+	 */
+	private void descend(int level, Node child, boolean left) {
+		Node parent = this.path[level];
+		this.wentLeft[level] = left;
+		this.path[level + 1] = child;
+		if (left) {
+			this.lo[level + 1] = this.lo[level];
+			this.hi[level + 1] = this.lo[level] + parent.rank;
+		} else {
+			this.lo[level + 1] = this.lo[level] + parent.rank + 1;
+			this.hi[level + 1] = this.hi[level];
+		}
+	}
+
+	/**
+	 * Follows the left (or right) children from path[level] as far as they go.
+	 *
+	 * @return the level of the last node on the spine
+	 */
+	private int pushSpine(boolean left, int level) {
+		Node child = left ? this.path[level].left : this.path[level].right;
+		while (child != Node.NULL_NODE) {
+			this.descend(level, child, left);
+			level++;
+			child = left ? child.left : child.right;
+		}
+		return level;
+	}
+
+	private void checkForModification() {
+		if (this.tree.modCount != this.expectedModCount) {
+			throw new ConcurrentModificationException();
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ConcurrentModificationException;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for moving a CharCursor and editing through it.
+ *
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+public class CharCursorTest {
+
+	private static void checkTree(String expected, EditTree t) {
+		assertEquals(expected, t.toString());
+		assertEquals(expected.length(), t.size());
+		assertTrue(t.ranksMatchLeftSubtreeSize());
+		assertTrue(t.balanceCodesAreCorrect());
+		assertEquals(t.slowHeight(), t.fastHeight());
+	}
+
+	/**
+	 * Checks that the cursor is at pos and that its path leads to the right
+	 * character, by stepping over it and back.
+	 */
+	private static void checkCursor(String expected, CharCursor cursor, int pos) {
+		assertEquals(pos, cursor.position());
+		assertEquals(pos < expected.length(), cursor.hasNext());
+		assertEquals(pos > 0, cursor.hasPrevious());
+		if (pos < expected.length()) {
+			assertEquals(expected.charAt(pos), cursor.peek());
+			assertEquals(expected.charAt(pos), cursor.nextChar());
+			assertEquals(expected.charAt(pos), cursor.previousChar());
+		}
+		if (pos > 0) {
+			assertEquals(expected.charAt(pos - 1), cursor.previousChar());
+			assertEquals(expected.charAt(pos - 1), cursor.nextChar());
+		}
+		assertEquals(pos, cursor.position());
+	}
+
+	@Test
+	public void testScanBothWays() {
+		String s = "the quick brown fox jumps over the lazy dog";
+		EditTree t = new EditTree(s);
+		CharCursor cursor = t.cursor(0);
+		StringBuilder forward = new StringBuilder();
+		while (cursor.hasNext()) {
+			forward.append(cursor.nextChar());
+		}
+		assertEquals(s, forward.toString());
+		StringBuilder backward = new StringBuilder();
+		while (cursor.hasPrevious()) {
+			backward.append(cursor.previousChar());
+		}
+		assertEquals(s, backward.reverse().toString());
+	}
+
+	@Test
+	public void testMoveAcrossRoot() {
+		String s = "abcdefghijklmnopqrstuvwxyz0123456789";
+		EditTree t = new EditTree(s);
+		CharCursor cursor = t.cursor(0);
+		int root = t.root.rank;
+		int[] moves = { root - 1, root, root + 1, 0, s.length(), root, s.length() - 1, 1, root + 2, root - 2 };
+		for (int pos : moves) {
+			cursor.moveTo(pos);
+			checkCursor(s, cursor, pos);
+		}
+		Random random = new Random(9);
+		for (int i = 0; i < 500; i++) {
+			int pos = random.nextInt(s.length() + 1);
+			cursor.moveTo(pos);
+			checkCursor(s, cursor, pos);
+		}
+	}
+
+	@Test
+	public void testTypeAtBothEnds() {
+		EditTree t = new EditTree();
+		CharCursor end = t.cursor(0);
+		StringBuilder expected = new StringBuilder();
+		for (char ch = 'a'; ch <= 'z'; ch++) {
+			end.insert(ch);
+			expected.append(ch);
+		}
+		checkTree(expected.toString(), t);
+		checkCursor(expected.toString(), end, expected.length());
+		CharCursor start = t.cursor(0);
+		for (char ch = 'A'; ch <= 'Z'; ch++) {
+			start.insert(ch);
+			start.moveTo(0);
+			expected.insert(0, ch);
+		}
+		checkTree(expected.toString(), t);
+		checkCursor(expected.toString(), start, 0);
+	}
+
+	@Test
+	public void testDeleteAtBothEnds() {
+		String s = "abcdefghijklmnopqrstuvwxyz";
+		EditTree t = new EditTree(s);
+		CharCursor cursor = t.cursor(0);
+		// delete key at the start
+		for (int i = 0; i < 10; i++) {
+			assertEquals(s.charAt(i), cursor.delete());
+			checkCursor(s.substring(i + 1), cursor, 0);
+		}
+		// backspace at the end
+		String rest = s.substring(10);
+		cursor.moveTo(rest.length());
+		while (cursor.hasPrevious()) {
+			cursor.previousChar();
+			assertEquals(rest.charAt(rest.length() - 1), cursor.delete());
+			rest = rest.substring(0, rest.length() - 1);
+			checkTree(rest, t);
+			checkCursor(rest, cursor, rest.length());
+		}
+		assertFalse(cursor.hasNext());
+		checkTree("", t);
+	}
+
+	@Test
+	public void testRandomEditsThroughCursor() {
+		for (long seed = 0; seed < 5; seed++) {
+			Random random = new Random(seed);
+			StringBuilder expected = new StringBuilder("0123456789");
+			EditTree t = new EditTree(expected.toString());
+			CharCursor cursor = t.cursor(5);
+			for (int step = 0; step < 3000; step++) {
+				int choice = random.nextInt(10);
+				if (choice < 2) {
+					cursor.moveTo(random.nextInt(expected.length() + 1));
+				} else if (choice < 6 || !cursor.hasNext()) {
+					char ch = (char) ('a' + random.nextInt(26));
+					expected.insert(cursor.position(), ch);
+					cursor.insert(ch);
+				} else {
+					assertEquals(expected.charAt(cursor.position()), cursor.delete());
+					expected.deleteCharAt(cursor.position());
+				}
+				checkCursor(expected.toString(), cursor, cursor.position());
+				if (step % 100 == 0) {
+					checkTree(expected.toString(), t);
+				}
+			}
+			checkTree(expected.toString(), t);
+		}
+	}
+
+	@Test
+	public void testInsertThenDelete() {
+		EditTree t = new EditTree("abcdef");
+		CharCursor cursor = t.cursor(3);
+		cursor.insert('x');
+		cursor.delete();
+		assertEquals("abcxef", t.toString());
+		checkCursor(t.toString(), cursor, 4);
+	}
+
+	@Test(expected = ConcurrentModificationException.class)
+	public void testStaleCursorNext() {
+		EditTree t = new EditTree("abcdef");
+		CharCursor cursor = t.cursor(3);
+		t.add('x', 0);
+		cursor.nextChar();
+	}
+
+	@Test(expected = ConcurrentModificationException.class)
+	public void testStaleCursorMoveTo() {
+		EditTree t = new EditTree("abcdef");
+		CharCursor cursor = t.cursor(3);
+		t.delete(5);
+		cursor.moveTo(1);
+	}
+
+	@Test(expected = ConcurrentModificationException.class)
+	public void testStaleCursorInsert() {
+		EditTree t = new EditTree("abcdef");
+		CharCursor cursor = t.cursor(3);
+		t.split(2);
+		cursor.insert('x');
+	}
+
+	@Test(expected = ConcurrentModificationException.class)
+	public void testStaleCursorDelete() {
+		EditTree t = new EditTree("abcdef");
+		CharCursor cursor = t.cursor(3);
+		CharCursor other = t.cursor(0);
+		other.insert('x');
+		cursor.delete();
+	}
+}
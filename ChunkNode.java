@@ -0,0 +1,626 @@
+package editortrees;
+
+import editortrees.Node.Code;
+
+/**
+ * A node in a height-balanced binary tree with rank that holds a run of
+ * characters instead of a single one. The rank of a chunk node is the number of
+ * CHARACTERS (not nodes) in its left subtree, so positions are still found in
+ * O(log N) time while the tree has roughly N / capacity nodes.
+ *
+ * @author Brian Beasley and Blaise Swartwood
+ */
+public class ChunkNode {
+
+	char[] chars; // the run of characters, only the first length are used
+	int length;
+	ChunkNode left, right; // subtrees
+	int rank; // number of characters in the left subtree
+	Code balance;
+
+	// The NULL_NODE has no characters and null children, just like Node's.
+	static final ChunkNode NULL_NODE = new ChunkNode(new char[0], 0);
+
+	/**
+	 * creates a new leaf chunk that uses the given array as its storage, with the
+	 * first length characters in use
+	 *
+	 * @param chars
+	 * @param length
+	 */
+	public ChunkNode(char[] chars, int length) {
+		this.chars = chars;
+		this.length = length;
+		this.left = NULL_NODE;
+		this.right = NULL_NODE;
+		this.balance = Code.SAME;
+		this.rank = 0;
+	}
+
+	/**
+	 * ensures a char is inserted at the specified character index of this subtree,
+	 * splitting the chunk it lands in if that chunk is already full
+	 *
+	 * @param ch
+	 * @param index
+	 * @param container value is set to true if the subtree grew taller
+	 * @return Node
+	 */
+	public ChunkNode add(char ch, int index, ChunkContainer container) {
+		if (index < this.rank) {
+			// the character lands in the left subtree, so it counts toward our rank
+			this.rank++;
+			left = left.add(ch, index, container);
+			return container.value ? this.leftGrew(container) : this;
+		} else if (index > this.rank + this.length) {
+			right = right.add(ch, index - (this.rank + this.length), container);
+			return container.value ? this.rightGrew(container) : this;
+		}
+		int offset = index - this.rank;
+		if (this.length < this.chars.length) {
+			// room left in this chunk, so the shape of the tree does not change
+			this.insertChar(ch, offset);
+			container.value = false;
+			return this;
+		}
+		// The chunk is full. Appending starts a fresh chunk so that text typed at
+		// the end keeps its chunks full, otherwise the upper half moves out.
+		ChunkNode tail;
+		if (offset == this.length) {
+			tail = new ChunkNode(new char[this.chars.length], 0);
+			tail.insertChar(ch, 0);
+		} else {
+			int half = this.length / 2;
+			tail = new ChunkNode(new char[this.chars.length], this.length - half);
+			System.arraycopy(this.chars, half, tail.chars, 0, tail.length);
+			this.length = half;
+			if (offset <= half) {
+				this.insertChar(ch, offset);
+			} else {
+				tail.insertChar(ch, offset - half);
+			}
+		}
+		// the new chunk is this chunk's in-order successor
+		right = right.addFirst(tail, container);
+		return container.value ? this.rightGrew(container) : this;
+	}
+
+	/**
+	 * ensures the given chunk is added before everything else in this subtree
+	 *
+	 * @param chunk
+	 * @param container value is set to true if the subtree grew taller
+	 * @return Node
+	 */
+	private ChunkNode addFirst(ChunkNode chunk, ChunkContainer container) {
+		if (this == NULL_NODE) {
+			container.value = true;
+			return chunk;
+		}
+		this.rank += chunk.length;
+		left = left.addFirst(chunk, container);
+		return container.value ? this.leftGrew(container) : this;
+	}
+
+	/**
+	 * shifts the characters after offset over by one and stores ch at offset
+	 *
+	 * @param ch
+	 * @param offset
+	 */
+	private void insertChar(char ch, int offset) {
+		System.arraycopy(this.chars, offset, this.chars, offset + 1, this.length - offset);
+		this.chars[offset] = ch;
+		this.length++;
+	}
+
+	/**
+	 * ensures the character at the specified index of this subtree is removed. A
+	 * chunk that becomes empty is removed from the tree. A chunk that falls below
+	 * half full is left in the container, so that the tree can merge it with its
+	 * in-order neighbor, which need not be in this subtree.
+	 *
+	 * @param index
+	 * @param container value is set to true if the subtree got shorter, data
+	 *                  holds the deleted character, and underfull and offset
+	 *                  hold the chunk if it fell below half full and where
+	 *                  in it the character was
+	 * @return Node
+	 */
+	public ChunkNode delete(int index, ChunkContainer container) {
+		if (index < this.rank) {
+			this.rank--;
+			left = left.delete(index, container);
+			return container.value ? this.leftShrank(container) : this;
+		} else if (index >= this.rank + this.length) {
+			right = right.delete(index - (this.rank + this.length), container);
+			return container.value ? this.rightShrank(container) : this;
+		}
+		// the character is in this chunk
+		int offset = index - this.rank;
+		container.data = this.chars[offset];
+		System.arraycopy(this.chars, offset + 1, this.chars, offset, this.length - offset - 1);
+		this.length--;
+		container.value = false;
+		if (this.length == 0) {
+			return this.removeSelf(container);
+		}
+		if (this.length < this.chars.length / 2) {
+			container.underfull = this;
+			container.offset = offset;
+		}
+		return this;
+	}
+
+	/**
+	 * ensures this (empty) chunk is unlinked from its subtree, replacing it with
+	 * its in-order successor when it has two children
+	 *
+	 * @param container value is set to true if the subtree got shorter
+	 * @return Node
+	 */
+	private ChunkNode removeSelf(ChunkContainer container) {
+		if (this.left == NULL_NODE || this.right == NULL_NODE) {
+			container.value = true;
+			return this.left == NULL_NODE ? this.right : this.left;
+		}
+		// take over the successor's characters, then unlink the successor
+		right = right.removeFirst(container);
+		this.takeChars(container.removed);
+		return container.value ? this.rightShrank(container) : this;
+	}
+
+	/**
+	 * ensures the whole chunk holding the specified index of this subtree is
+	 * removed from the tree, leaving its characters array alone
+	 *
+	 * @param index
+	 * @param length    number of characters in that chunk
+	 * @param container value is set to true if the subtree got shorter
+	 * @return Node
+	 */
+	ChunkNode removeChunk(int index, int length, ChunkContainer container) {
+		if (index < this.rank) {
+			this.rank -= length;
+			left = left.removeChunk(index, length, container);
+			return container.value ? this.leftShrank(container) : this;
+		} else if (index >= this.rank + this.length) {
+			right = right.removeChunk(index - (this.rank + this.length), length, container);
+			return container.value ? this.rightShrank(container) : this;
+		}
+		return this.removeSelf(container);
+	}
+
+	/**
+	 * ensures count characters are added to the start or end of the chunk holding
+	 * the specified index, which must have room for them. The shape of the tree
+	 * does not change.
+	 *
+	 * @param index
+	 * @param run    characters to add
+	 * @param count  number of characters of run to add
+	 * @param append true to add them after the chunk's characters, false to add
+	 *               them before
+	 */
+	void addRun(int index, char[] run, int count, boolean append) {
+		ChunkNode current = this;
+		while (true) {
+			if (index < current.rank) {
+				current.rank += count;
+				current = current.left;
+			} else if (index >= current.rank + current.length) {
+				index -= current.rank + current.length;
+				current = current.right;
+			} else {
+				break;
+			}
+		}
+		if (!append) {
+			System.arraycopy(current.chars, 0, current.chars, count, current.length);
+		}
+		System.arraycopy(run, 0, current.chars, append ? current.length : 0, count);
+		current.length += count;
+	}
+
+	/**
+	 * ensures the first chunk of this subtree is unlinked and stored in the
+	 * container
+	 *
+	 * @param container value is set to true if the subtree got shorter
+	 * @return Node
+	 */
+	private ChunkNode removeFirst(ChunkContainer container) {
+		if (this.left == NULL_NODE) {
+			container.removed = this;
+			container.value = true;
+			return this.right;
+		}
+		left = left.removeFirst(container);
+		this.rank -= container.removed.length;
+		return container.value ? this.leftShrank(container) : this;
+	}
+
+	/**
+	 * moves the characters of another chunk into this one
+	 *
+	 * @param other
+	 */
+	private void takeChars(ChunkNode other) {
+		this.chars = other.chars;
+		this.length = other.length;
+	}
+
+	/**
+	 * updates the balance code after the left subtree grew, rotating if needed
+	 *
+	 * @param container value stays true if this subtree grew as well
+	 * @return Node
+	 */
+	private ChunkNode leftGrew(ChunkContainer container) {
+		if (this.balance == Code.SAME) {
+			this.balance = Code.LEFT;
+			return this;
+		}
+		container.value = false;
+		if (this.balance == Code.RIGHT) {
+			this.balance = Code.SAME;
+			return this;
+		}
+		if (this.left.balance == Code.RIGHT) {
+			container.rotationCount += 2;
+			return this.doubleRightRotation(this, this.left.right, this.left);
+		}
+		container.rotationCount += 1;
+		return this.singleRightRotation(this, this.left);
+	}
+
+	/**
+	 * updates the balance code after the right subtree grew, rotating if needed
+	 *
+	 * @param container value stays true if this subtree grew as well
+	 * @return Node
+	 */
+	private ChunkNode rightGrew(ChunkContainer container) {
+		if (this.balance == Code.SAME) {
+			this.balance = Code.RIGHT;
+			return this;
+		}
+		container.value = false;
+		if (this.balance == Code.LEFT) {
+			this.balance = Code.SAME;
+			return this;
+		}
+		if (this.right.balance == Code.LEFT) {
+			container.rotationCount += 2;
+			return this.doubleLeftRotation(this, this.right.left, this.right);
+		}
+		container.rotationCount += 1;
+		return this.singleLeftRotation(this, this.right);
+	}
+
+	/**
+	 * updates the balance code after the left subtree got shorter, rotating if
+	 * needed
+	 *
+	 * @param container value stays true if this subtree got shorter as well
+	 * @return Node
+	 */
+	private ChunkNode leftShrank(ChunkContainer container) {
+		if (this.balance == Code.LEFT) {
+			this.balance = Code.SAME;
+			return this;
+		}
+		if (this.balance == Code.SAME) {
+			this.balance = Code.RIGHT;
+			container.value = false;
+			return this;
+		}
+		if (this.right.balance == Code.SAME) {
+			// the height is unchanged after this rotation, so we can stop here
+			ChunkNode temp = this.singleLeftRotation(this, this.right);
+			temp.balance = Code.LEFT;
+			temp.left.balance = Code.RIGHT;
+			container.rotationCount += 1;
+			container.value = false;
+			return temp;
+		}
+		if (this.right.balance == Code.RIGHT) {
+			container.rotationCount += 1;
+			return this.singleLeftRotation(this, this.right);
+		}
+		container.rotationCount += 2;
+		return this.doubleLeftRotation(this, this.right.left, this.right);
+	}
+
+	/**
+	 * updates the balance code after the right subtree got shorter, rotating if
+	 * needed
+	 *
+	 * @param container value stays true if this subtree got shorter as well
+	 * @return Node
+	 */
+	private ChunkNode rightShrank(ChunkContainer container) {
+		if (this.balance == Code.RIGHT) {
+			this.balance = Code.SAME;
+			return this;
+		}
+		if (this.balance == Code.SAME) {
+			this.balance = Code.LEFT;
+			container.value = false;
+			return this;
+		}
+		if (this.left.balance == Code.SAME) {
+			ChunkNode temp = this.singleRightRotation(this, this.left);
+			temp.balance = Code.RIGHT;
+			temp.right.balance = Code.LEFT;
+			container.rotationCount += 1;
+			container.value = false;
+			return temp;
+		}
+		if (this.left.balance == Code.LEFT) {
+			container.rotationCount += 1;
+			return this.singleRightRotation(this, this.left);
+		}
+		container.rotationCount += 2;
+		return this.doubleRightRotation(this, this.left.right, this.left);
+	}
+
+	/**
+	 * ensures a single left rotation is carried out to keep the tree height
+	 * balanced
+	 *
+	 * @param Node A (parent node)
+	 * @param Node B (child node)
+	 * @return Node
+	 */
+	public ChunkNode singleLeftRotation(ChunkNode A, ChunkNode B) {
+		A.right = B.left;
+		B.left = A;
+		A.balance = Code.SAME;
+		B.balance = Code.SAME;
+		// B's left subtree now holds A and all of A's left subtree
+		B.rank += A.rank + A.length;
+		return B;
+	}
+
+	/**
+	 * ensures a single right rotation is carried out to keep the tree height
+	 * balanced
+	 *
+	 * @param Node A (parent node)
+	 * @param Node B (child node)
+	 * @return Node
+	 */
+	public ChunkNode singleRightRotation(ChunkNode A, ChunkNode B) {
+		A.left = B.right;
+		B.right = A;
+		A.balance = Code.SAME;
+		B.balance = Code.SAME;
+		A.rank -= B.rank + B.length;
+		return B;
+	}
+
+	/**
+	 * ensures a double left rotation is carried out to keep the tree height
+	 * balanced
+	 *
+	 * @param Node A (parent node)
+	 * @param Node B (grandchild node)
+	 * @param Node C (child node
+	 * @return Node
+	 */
+	public ChunkNode doubleLeftRotation(ChunkNode A, ChunkNode B, ChunkNode C) {
+		A.right = B.left;
+		C.left = B.right;
+		B.left = A;
+		B.right = C;
+		C.rank -= B.rank + B.length;
+		B.rank += A.rank + A.length;
+		this.balanceAfterDoubleRotation(A, B, C);
+		return B;
+	}
+
+	/**
+	 * ensures a double right rotation is carried out to keep the tree height
+	 * balanced
+	 *
+	 * @param Node C (parent node)
+	 * @param Node B (grandchild node)
+	 * @param Node A (child node)
+	 * @return Node
+	 */
+	public ChunkNode doubleRightRotation(ChunkNode C, ChunkNode B, ChunkNode A) {
+		A.right = B.left;
+		C.left = B.right;
+		B.left = A;
+		B.right = C;
+		B.rank += A.rank + A.length;
+		C.rank -= B.rank + B.length;
+		this.balanceAfterDoubleRotation(A, B, C);
+		return B;
+	}
+
+	/**
+	 * sets the balance codes of a double rotation, based on B's old balance code,
+	 * where A ends up as B's left child and C as B's right child
+	 */
+	private void balanceAfterDoubleRotation(ChunkNode A, ChunkNode B, ChunkNode C) {
+		if (B.balance == Code.LEFT) {
+			A.balance = Code.SAME;
+			C.balance = Code.RIGHT;
+		} else if (B.balance == Code.RIGHT) {
+			A.balance = Code.LEFT;
+			C.balance = Code.SAME;
+		} else {
+			A.balance = Code.SAME;
+			C.balance = Code.SAME;
+		}
+		B.balance = Code.SAME;
+	}
+
+	/**
+	 * ensures the character at the specified index is returned
+	 *
+	 * @param index
+	 * @return char
+	 */
+	public char get(int index) {
+		ChunkNode current = this;
+		while (true) {
+			if (index < current.rank) {
+				current = current.left;
+			} else if (index >= current.rank + current.length) {
+				index -= current.rank + current.length;
+				current = current.right;
+			} else {
+				return current.chars[index - current.rank];
+			}
+		}
+	}
+
+	/**
+	 * @param index
+	 * @return the chunk holding the character at the specified index
+	 */
+	ChunkNode chunkAt(int index) {
+		ChunkNode current = this;
+		while (true) {
+			if (index < current.rank) {
+				current = current.left;
+			} else if (index >= current.rank + current.length) {
+				index -= current.rank + current.length;
+				current = current.right;
+			} else {
+				return current;
+			}
+		}
+	}
+
+	/**
+	 * ensures the length characters starting at index are appended in order. The
+	 * index may be negative, meaning the range started in an earlier subtree.
+	 *
+	 * @param index
+	 * @param length
+	 * @param sb
+	 */
+	public void get(int index, int length, StringBuilder sb) {
+		if (this == NULL_NODE || length <= 0) {
+			return;
+		}
+		if (index < this.rank) {
+			this.left.get(index, length, sb);
+		}
+		// the part of the range that overlaps this chunk
+		int start = Math.max(index - this.rank, 0);
+		int end = Math.min(index + length - this.rank, this.length);
+		if (start < end) {
+			sb.append(this.chars, start, end - start);
+		}
+		if (index + length > this.rank + this.length) {
+			this.right.get(index - (this.rank + this.length), length, sb);
+		}
+	}
+
+	/**
+	 * recursive to string method in in-order transversal
+	 */
+	public void toString(StringBuilder string) {
+		if (this != NULL_NODE) {
+			left.toString(string);
+			string.append(this.chars, 0, this.length);
+			right.toString(string);
+		}
+	}
+
+	/**
+	 * recursive method to obtain the height of the tree from the balance codes
+	 *
+	 * @return int
+	 */
+	public int fastHeight() {
+		if (this == NULL_NODE) {
+			return -1;
+		}
+		if (this.balance == Code.LEFT) {
+			return left.fastHeight() + 1;
+		}
+		return right.fastHeight() + 1;
+	}
+
+	int slowHeight() {
+		if (this == NULL_NODE) {
+			return -1;
+		}
+		return Math.max(left.slowHeight(), right.slowHeight()) + 1;
+	}
+
+	public int slowSize() {
+		if (this == NULL_NODE) {
+			return 0;
+		}
+		return left.slowSize() + right.slowSize() + 1;
+	}
+
+	/**
+	 * ensures every rank equals the number of characters in its left subtree and
+	 * that no chunk is empty
+	 *
+	 * @return the number of characters in this subtree, or -1 if a rank is wrong
+	 */
+	public int rankMatchLeftSubtreeSize() {
+		if (this == NULL_NODE) {
+			return 0;
+		}
+		int leftSize = left.rankMatchLeftSubtreeSize();
+		int rightSize = right.rankMatchLeftSubtreeSize();
+		if (leftSize < 0 || rightSize < 0 || this.rank != leftSize || this.length == 0) {
+			return -1;
+		}
+		return leftSize + rightSize + this.length;
+	}
+
+	/**
+	 * ensures the balance codes are correct by comparing the height of the left and
+	 * right subtree
+	 *
+	 * @return the height of this subtree, or -2 if a balance code is wrong
+	 */
+	public int balanceCodesAreCorrect() {
+		if (this == NULL_NODE) {
+			return -1;
+		}
+		int leftHeight = left.balanceCodesAreCorrect();
+		int rightHeight = right.balanceCodesAreCorrect();
+		if (leftHeight == -2 || rightHeight == -2) {
+			return -2;
+		}
+		boolean match;
+		if (rightHeight == leftHeight + 1) {
+			match = this.balance == Code.RIGHT;
+		} else if (leftHeight == rightHeight + 1) {
+			match = this.balance == Code.LEFT;
+		} else {
+			match = leftHeight == rightHeight && this.balance == Code.SAME;
+		}
+		return match ? Math.max(leftHeight, rightHeight) + 1 : -2;
+	}
+
+	/**
+	 * Data holding container class so that the recursive methods can return more
+	 * than the new subtree root
+	 */
+	public static class ChunkContainer {
+
+		boolean value;
+		int rotationCount;
+		char data;
+		ChunkNode removed;
+		ChunkNode underfull;
+		int offset;
+
+		public ChunkContainer() {
+			this.value = true;
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package editortrees;
+
+import editortrees.ChunkNode.ChunkContainer;
+import editortrees.Node.Code;
+
+/**
+ * A height-balanced binary tree with rank, like EditTree, except that each node
+ * holds a bounded run of characters instead of a single one. Full chunks split
+ * in two and chunks that fall below half full merge with a neighbor, so a large
+ * document needs far fewer nodes (and pointer chases) than an EditTree, while
+ * add, delete and get still run in O(log N) time.
+ *
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+public class ChunkedEditTree implements EditableTree {
+
+	static final int DEFAULT_CHUNK_CAPACITY = 256;
+
+	ChunkNode root;
+	private int size;
+	private int totalRotationCount;
+	private final int chunkCapacity;
+
+	/**
+	 * Construct an empty tree whose chunks hold up to DEFAULT_CHUNK_CAPACITY
+	 * characters
+	 */
+	public ChunkedEditTree() {
+		this(DEFAULT_CHUNK_CAPACITY);
+	}
+
+	/**
+	 * Construct an empty tree whose chunks hold up to chunkCapacity characters
+	 *
+	 * @param chunkCapacity
+	 * @throws IllegalArgumentException if chunkCapacity is less than 4
+	 */
+	public ChunkedEditTree(int chunkCapacity) {
+		if (chunkCapacity < 4) {
+			throw new IllegalArgumentException("chunk capacity must be at least 4");
+		}
+		this.root = ChunkNode.NULL_NODE;
+		this.chunkCapacity = chunkCapacity;
+		this.totalRotationCount = 0;
+	}
+
+	/**
+	 * Create a tree whose toString is s in O(N) time, packing s into full chunks
+	 *
+	 * @param s
+	 */
+	public ChunkedEditTree(String s) {
+		this(s, DEFAULT_CHUNK_CAPACITY);
+	}
+
+	/**
+	 * Create a tree whose toString is s in O(N) time, packing s into full chunks of
+	 * the given capacity
+	 *
+	 * @param s
+	 * @param chunkCapacity
+	 */
+	public ChunkedEditTree(String s, int chunkCapacity) {
+		this(chunkCapacity);
+		int chunks = (s.length() + chunkCapacity - 1) / chunkCapacity;
+		this.root = fillTree(s, 0, chunks - 1);
+		this.size = s.length();
+	}
+
+	/**
+	 * Constructs a balanced tree of the chunks lower..upper of s, where every chunk
+	 * but the last is full. Only the last chunk can be short and it is never in a
+	 * left subtree, so each rank is a whole number of chunks.
+	 *
+	 * @param s
+	 * @param lower
+	 * @param upper
+	 * @return ChunkNode
+	 */
+	private ChunkNode fillTree(String s, int lower, int upper) {
+		if (upper < lower) {
+			return ChunkNode.NULL_NODE;
+		}
+		int mid = (lower + upper) / 2;
+		int start = mid * this.chunkCapacity;
+		int end = Math.min(start + this.chunkCapacity, s.length());
+		char[] chars = new char[this.chunkCapacity];
+		s.getChars(start, end, chars, 0);
+		ChunkNode node = new ChunkNode(chars, end - start);
+		node.rank = (mid - lower) * this.chunkCapacity;
+		// the right side never has fewer chunks than the left side
+		node.balance = height(mid - lower) == height(upper - mid) ? Code.SAME : Code.RIGHT;
+		node.left = fillTree(s, lower, mid - 1);
+		node.right = fillTree(s, mid + 1, upper);
+		return node;
+	}
+
+	/**
+	 * @param count
+	 * @return the height of a tree of count nodes built by splitting at the middle
+	 */
+	private static int height(int count) {
+		return 31 - Integer.numberOfLeadingZeros(count);
+	}
+
+	/**
+	 * return the string produced by an in-order traversal of this tree
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(this.size);
+		root.toString(sb);
+		return sb.toString();
+	}
+
+	/**
+	 * @return the number of characters in this tree
+	 */
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the number of chunks (nodes) in this tree, found in O(N / capacity)
+	 *         time
+	 */
+	public int chunkCount() {
+		return root.slowSize();
+	}
+
+	/**
+	 * @param ch character to add to the end of this tree.
+	 */
+	@Override
+	public void add(char ch) {
+		this.add(ch, this.size);
+	}
+
+	/**
+	 * @param ch    character to add
+	 * @param index character added in this in-order position. Valid positions
+	 *              range from 0 to the size of the tree, inclusive.
+	 * @throws IndexOutOfBoundsException if index is negative or too large for
+	 *                                   this tree.
+	 */
+	@Override
+	public void add(char ch, int index) throws IndexOutOfBoundsException {
+		if (this.size < index || index < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (root == ChunkNode.NULL_NODE) {
+			root = new ChunkNode(new char[this.chunkCapacity], 0);
+		}
+		ChunkContainer container = new ChunkContainer();
+		root = root.add(ch, index, container);
+		this.totalRotationCount += container.rotationCount;
+		this.size++;
+	}
+
+	/**
+	 * @param pos position of character to delete from this tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	@Override
+	public char delete(int pos) throws IndexOutOfBoundsException {
+		if (pos >= size || pos < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		ChunkContainer container = new ChunkContainer();
+		root = root.delete(pos, container);
+		this.totalRotationCount += container.rotationCount;
+		this.size--;
+		if (container.underfull != null) {
+			this.mergeNeighbor(container.underfull, pos - container.offset);
+		}
+		return container.data;
+	}
+
+	/**
+	 * Moves the characters of a chunk that fell below half full into its
+	 * in-order predecessor or successor, if they fit there, and removes the chunk.
+	 * The neighbor is often in another subtree, for example when the chunk is a
+	 * leaf, so it is found from the root in O(log N) time.
+	 *
+	 * @param chunk the chunk that fell below half full
+	 * @param start position of the chunk's first character
+	 */
+	private void mergeNeighbor(ChunkNode chunk, int start) {
+		int end = start + chunk.length;
+		boolean append;
+		if (start > 0 && root.chunkAt(start - 1).length + chunk.length <= this.chunkCapacity) {
+			append = true;
+		} else if (end < this.size && root.chunkAt(end).length + chunk.length <= this.chunkCapacity) {
+			append = false;
+		} else {
+			return;
+		}
+		// removing the chunk may hand it another chunk's array, so keep its own
+		char[] run = chunk.chars;
+		int length = chunk.length;
+		ChunkContainer container = new ChunkContainer();
+		root = root.removeChunk(start, length, container);
+		this.totalRotationCount += container.rotationCount;
+		// the predecessor ends just before start and the successor now begins at it
+		root.addRun(append ? start - 1 : start, run, length, append);
+	}
+
+	/**
+	 * @param pos position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException if pos is negative or too big.
+	 */
+	@Override
+	public char get(int pos) throws IndexOutOfBoundsException {
+		if (this.size <= pos || pos < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		return root.get(pos);
+	}
+
+	/**
+	 * This method operates in O(log N + length) time.
+	 *
+	 * @param pos    location of the beginning of the string to retrieve
+	 * @param length length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
+	 *                                   legitimate indexes within this tree.
+	 */
+	@Override
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+		if (pos < 0 || length < 0 || length > this.size - pos) {
+			throw new IndexOutOfBoundsException();
+		}
+		StringBuilder sb = new StringBuilder(length);
+		root.get(pos, length, sb);
+		return sb.toString();
+	}
+
+	/**
+	 * @return the height of this tree, found from the balance codes
+	 */
+	@Override
+	public int fastHeight() {
+		return root.fastHeight();
+	}
+
+	public int slowHeight() {
+		return root.slowHeight();
+	}
+
+	/**
+	 * @return number of rotations since this tree was created.
+	 */
+	@Override
+	public int totalRotationCount() {
+		return totalRotationCount;
+	}
+
+	/**
+	 * @return True iff each chunk's rank equals the number of characters in its
+	 *         left subtree.
+	 */
+	public boolean ranksMatchLeftSubtreeSize() {
+		return root.rankMatchLeftSubtreeSize() == this.size;
+	}
+
+	/**
+	 * @return True iff each chunk's balance code is correct.
+	 */
+	public boolean balanceCodesAreCorrect() {
+		return root.balanceCodesAreCorrect() != -2;
+	}
+}
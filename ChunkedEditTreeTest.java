@@ -0,0 +1,101 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that ChunkedEditTree keeps its chunks reasonably full as text is
+ * deleted.
+ *
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+public class ChunkedEditTreeTest {
+
+	private static void checkTree(String expected, ChunkedEditTree t) {
+		assertEquals(expected, t.toString());
+		assertEquals(expected.length(), t.size());
+		assertTrue(t.ranksMatchLeftSubtreeSize());
+		assertTrue(t.balanceCodesAreCorrect());
+		assertEquals(t.slowHeight(), t.fastHeight());
+	}
+
+	@Test
+	public void testLeafMergesWithParent() {
+		// three full chunks: the middle one is the root and the others its leaves
+		String s = "abcdefghijklmnopqrstuvwx";
+		ChunkedEditTree t = new ChunkedEditTree(s, 8);
+		assertEquals(3, t.chunkCount());
+		// leave the root chunk with room for the rest of the first chunk
+		for (int i = 0; i < 3; i++) {
+			t.delete(8);
+		}
+		assertEquals(3, t.chunkCount());
+		// the first chunk is a leaf whose successor is the root
+		for (int i = 0; i < 5; i++) {
+			t.delete(0);
+		}
+		checkTree("fghlmnopqrstuvwx", t);
+		assertEquals(2, t.chunkCount());
+	}
+
+	@Test
+	public void testLeafMergesWithPredecessor() {
+		String s = "abcdefghijklmnopqrstuvwx";
+		ChunkedEditTree t = new ChunkedEditTree(s, 8);
+		for (int i = 0; i < 4; i++) {
+			t.delete(8);
+		}
+		// the last chunk is a leaf whose predecessor is the root
+		for (int i = 0; i < 5; i++) {
+			t.delete(t.size() - 1);
+		}
+		checkTree("abcdefghmnopqrs", t);
+		assertEquals(2, t.chunkCount());
+	}
+
+	@Test
+	public void testChunkCountAfterHeavyDeletes() {
+		int capacity = ChunkedEditTree.DEFAULT_CHUNK_CAPACITY;
+		for (long seed = 0; seed < 3; seed++) {
+			Random random = new Random(seed);
+			char[] chars = new char[200000];
+			Arrays.fill(chars, 'x');
+			ChunkedEditTree t = new ChunkedEditTree(new String(chars));
+			while (t.size() > 5000) {
+				t.delete(random.nextInt(t.size()));
+			}
+			checkTree(new String(chars, 0, t.size()), t);
+			// on average a chunk stays more than half full
+			assertTrue(t.chunkCount() <= t.size() / (capacity / 2));
+		}
+	}
+
+	@Test
+	public void testRandomEditsWithSmallChunks() {
+		Random random = new Random(7);
+		StringBuilder expected = new StringBuilder();
+		ChunkedEditTree t = new ChunkedEditTree(4);
+		for (int step = 0; step < 5000; step++) {
+			if (expected.length() == 0 || random.nextInt(10) < (step < 2500 ? 7 : 3)) {
+				char ch = (char) ('a' + random.nextInt(26));
+				int pos = random.nextInt(expected.length() + 1);
+				expected.insert(pos, ch);
+				t.add(ch, pos);
+			} else {
+				int pos = random.nextInt(expected.length());
+				assertEquals(expected.charAt(pos), t.delete(pos));
+				expected.deleteCharAt(pos);
+			}
+			if (step % 100 == 0) {
+				checkTree(expected.toString(), t);
+			}
+		}
+		checkTree(expected.toString(), t);
+	}
+}
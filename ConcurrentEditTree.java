@@ -0,0 +1,141 @@
+package editortrees;
+
+/**
+ * A tree that many threads can read while another edits it. Edits go to a
+ * PersistentEditTree, which never changes a node once it is visible, and after
+ * each edit the new version is published through a volatile field. Reads use
+ * whichever version was published last, so they never block or wait for the
+ * writer, and each read sees one whole version rather than a tree in the middle
+ * of a rotation. Edits are serialized with a lock, so any thread may edit, but
+ * only one at a time.
+ *
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+public class ConcurrentEditTree implements EditableTree {
+
+	// only touched while holding the lock on this
+	private final PersistentEditTree writer;
+	// the last version the writer finished, which is never edited again
+	private volatile PersistentEditTree published;
+
+	/**
+	 * Construct an empty tree
+	 */
+	public ConcurrentEditTree() {
+		this(new PersistentEditTree());
+	}
+
+	/**
+	 * Create a tree whose toString is s in O(N) time
+	 *
+	 * @param s
+	 */
+	public ConcurrentEditTree(String s) {
+		this(new PersistentEditTree(s));
+	}
+
+	private ConcurrentEditTree(PersistentEditTree writer) {
+		this.writer = writer;
+		this.published = writer.snapshot();
+	}
+
+	/**
+	 * @param ch character to add to the end of this tree.
+	 */
+	@Override
+	public synchronized void add(char ch) {
+		this.writer.add(ch);
+		this.published = this.writer.snapshot();
+	}
+
+	/**
+	 * @param ch    character to add
+	 * @param index character added in this in-order position. Valid positions
+	 *              range from 0 to the size of the tree, inclusive.
+	 * @throws IndexOutOfBoundsException if index is negative or too large for
+	 *                                   this tree.
+	 */
+	@Override
+	public synchronized void add(char ch, int index) throws IndexOutOfBoundsException {
+		this.writer.add(ch, index);
+		this.published = this.writer.snapshot();
+	}
+
+	/**
+	 * @param pos position of character to delete from this tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	@Override
+	public synchronized char delete(int pos) throws IndexOutOfBoundsException {
+		char deleted = this.writer.delete(pos);
+		this.published = this.writer.snapshot();
+		return deleted;
+	}
+
+	/**
+	 * Returns the latest version in O(1) time, for a reader that needs several
+	 * reads to agree with each other.
+	 *
+	 * @return a tree that no other thread will change
+	 */
+	public PersistentEditTree snapshot() {
+		return this.published.snapshot();
+	}
+
+	/**
+	 * @return the number of characters in the latest version
+	 */
+	@Override
+	public int size() {
+		return this.published.size();
+	}
+
+	/**
+	 * @param pos position in the latest version
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException if pos is negative or too big.
+	 */
+	@Override
+	public char get(int pos) throws IndexOutOfBoundsException {
+		return this.published.get(pos);
+	}
+
+	/**
+	 * @param pos    location of the beginning of the string to retrieve
+	 * @param length length of the string to retrieve
+	 * @return string of length that starts in position pos of the latest version
+	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
+	 *                                   legitimate indexes within the latest
+	 *                                   version.
+	 */
+	@Override
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+		return this.published.get(pos, length);
+	}
+
+	/**
+	 * @return the height of the latest version
+	 */
+	@Override
+	public int fastHeight() {
+		return this.published.fastHeight();
+	}
+
+	/**
+	 * @return number of rotations done to make the latest version
+	 */
+	@Override
+	public int totalRotationCount() {
+		return this.published.totalRotationCount();
+	}
+
+	/**
+	 * return the string produced by an in-order traversal of the latest version
+	 */
+	@Override
+	public String toString() {
+		return this.published.toString();
+	}
+}
@@ -0,0 +1,221 @@
+package editortrees;
+
+import java.util.ArrayList;
+
+/**
+ * An unbounded undo/redo log for an EditTree. Each edit is kept as its position
+ * and length, plus the removed characters while they are out of the tree, so
+ * the history uses memory in proportion to the edits rather than the document.
+ * Undoing or redoing an edit of M characters is a split and concatenate (or a
+ * single add or delete) and takes O(log N + M) time at worst.
+ *
+ * When runs are coalesced, typing characters one after another, or deleting
+ * them one after another with either backspace or delete, extends the last
+ * entry instead of adding a new one, so the whole run is undone at once.
+ *
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+public class EditHistory {
+
+	private final EditTree tree;
+	private final boolean coalesceRuns;
+	private final ArrayList<Entry> undoStack = new ArrayList<Entry>();
+	private final ArrayList<Entry> redoStack = new ArrayList<Entry>();
+	// false once the last entry may no longer be extended by the next edit
+	private boolean runOpen;
+
+	/**
+	 * Starts recording the edits made to tree from now on. Use
+	 * EditTree.recordHistory rather than calling this directly.
+	 *
+	 * @param tree
+	 * @param coalesceRuns
+	 */
+	EditHistory(EditTree tree, boolean coalesceRuns) {
+		this.tree = tree;
+		this.coalesceRuns = coalesceRuns;
+	}
+
+	/**
+	 * @return true iff there is an edit to undo
+	 */
+	public boolean canUndo() {
+		return !this.undoStack.isEmpty();
+	}
+
+	/**
+	 * @return true iff there is an undone edit to redo
+	 */
+	public boolean canRedo() {
+		return !this.redoStack.isEmpty();
+	}
+
+	/**
+	 * Undoes the last edit (or run of edits) that has not been undone.
+	 *
+	 * @throws IllegalStateException if there is nothing to undo
+	 */
+	public void undo() {
+		if (!this.canUndo()) {
+			throw new IllegalStateException("nothing to undo");
+		}
+		Entry entry = this.undoStack.remove(this.undoStack.size() - 1);
+		this.apply(entry, !entry.inserted);
+		this.redoStack.add(entry);
+		this.runOpen = false;
+	}
+
+	/**
+	 * Redoes the last edit (or run of edits) that was undone.
+	 *
+	 * @throws IllegalStateException if there is nothing to redo
+	 */
+	public void redo() {
+		if (!this.canRedo()) {
+			throw new IllegalStateException("nothing to redo");
+		}
+		Entry entry = this.redoStack.remove(this.redoStack.size() - 1);
+		this.apply(entry, entry.inserted);
+		this.undoStack.add(entry);
+		this.runOpen = false;
+	}
+
+	/**
+	 * Ends the current run, so the next edit gets its own entry even if it is next
+	 * to the last one. An editor would call this when the cursor moves or typing
+	 * pauses.
+	 */
+	public void closeRun() {
+		this.runOpen = false;
+	}
+
+	/**
+	 * Forgets every recorded edit.
+	 */
+	public void clear() {
+		this.undoStack.clear();
+		this.redoStack.clear();
+		this.runOpen = false;
+	}
+
+	/**
+	 * @return the number of entries that can be undone
+	 */
+	public int undoCount() {
+		return this.undoStack.size();
+	}
+
+	/**
+	 * @return the number of entries that can be redone
+	 */
+	public int redoCount() {
+		return this.redoStack.size();
+	}
+
+	/**
+	 * Puts the entry's characters back into the tree, or takes them out, without
+	 * recording that as a new edit.
+	 *
+	 * @param entry
+	 * @param putBack true to put the removed characters back at entry.pos
+	 */
+	private void apply(Entry entry, boolean putBack) {
+		this.tree.history = null;
+		try {
+			if (!putBack) {
+				entry.removed = this.tree.delete(entry.pos, entry.length);
+			} else if (entry.length == 1) {
+				this.tree.add(entry.removed.get(0), entry.pos);
+				entry.removed = null;
+			} else {
+				// splice the removed tree back in, which moves its nodes into the tree
+				EditTree rest = this.tree.split(entry.pos);
+				this.tree.concatenate(entry.removed);
+				this.tree.concatenate(rest);
+				entry.removed = null;
+			}
+		} finally {
+			this.tree.history = this;
+		}
+	}
+
+	/**
+	 * records that length characters were inserted starting at pos
+	 */
+	void recordInsert(int pos, int length) {
+		Entry last = this.lastOpenEntry();
+		if (length == 1 && last != null && last.inserted && pos == last.pos + last.length) {
+			// typing on at the end of the run
+			last.length += length;
+			return;
+		}
+		this.push(new Entry(true, pos, length, null));
+	}
+
+	/**
+	 * records that ch was deleted from pos
+	 */
+	void recordDelete(int pos, char ch) {
+		Entry last = this.lastOpenEntry();
+		if (last != null && !last.inserted) {
+			if (pos == last.pos) {
+				// delete key: the next character has moved into pos
+				last.removed.add(ch);
+				last.length++;
+				return;
+			} else if (pos == last.pos - 1) {
+				// backspace: the character before the run
+				last.removed.add(ch, 0);
+				last.pos--;
+				last.length++;
+				return;
+			}
+		}
+		this.push(new Entry(false, pos, 1, new EditTree(ch)));
+	}
+
+	/**
+	 * records that the characters of removed were deleted starting at pos. The
+	 * history keeps removed, so the caller must pass a tree nothing else uses.
+	 */
+	void recordDelete(int pos, EditTree removed) {
+		this.push(new Entry(false, pos, removed.size(), removed));
+		// a block deletion does not join a run of keystrokes
+		this.runOpen = false;
+	}
+
+	private Entry lastOpenEntry() {
+		if (!this.coalesceRuns || !this.runOpen || this.undoStack.isEmpty()) {
+			return null;
+		}
+		return this.undoStack.get(this.undoStack.size() - 1);
+	}
+
+	private void push(Entry entry) {
+		this.undoStack.add(entry);
+		// a new edit makes the undone ones unreachable
+		this.redoStack.clear();
+		this.runOpen = entry.length == 1;
+	}
+
+	/**
+	 * One undoable edit: length characters inserted into or deleted from the tree
+	 * at pos. removed holds those characters whenever they are not in the tree:
+	 * after a deletion, or after an insertion is undone.
+	 */
+	private static class Entry {
+
+		final boolean inserted;
+		int pos;
+		int length;
+		EditTree removed;
+
+		public Entry(boolean inserted, int pos, int length, EditTree removed) {
+			this.inserted = inserted;
+			this.pos = pos;
+			this.length = length;
+			this.removed = removed;
+		}
+	}
+}
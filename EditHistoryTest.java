@@ -0,0 +1,202 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for undoing and redoing every kind of edit an EditTree records.
+ *
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+public class EditHistoryTest {
+
+	private static void checkTree(String expected, EditTree t) {
+		assertEquals(expected, t.toString());
+		assertEquals(expected.length(), t.size());
+		assertTrue(t.ranksMatchLeftSubtreeSize());
+		assertTrue(t.balanceCodesAreCorrect());
+		assertEquals(t.slowHeight(), t.fastHeight());
+	}
+
+	private static String randomText(Random random, int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = (char) ('a' + random.nextInt(26));
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Makes one random edit of any kind the history records.
+	 */
+	private static void randomEdit(Random random, EditTree t) {
+		int size = t.size();
+		switch (random.nextInt(8)) {
+		case 0:
+			t.add((char) ('a' + random.nextInt(26)));
+			break;
+		case 1:
+			t.add((char) ('a' + random.nextInt(26)), random.nextInt(size + 1));
+			break;
+		case 2:
+			if (size > 0) {
+				t.delete(random.nextInt(size));
+			}
+			break;
+		case 3:
+			int pos = random.nextInt(size + 1);
+			t.delete(pos, random.nextInt(Math.min(20, size - pos) + 1));
+			break;
+		case 4:
+			t.insert(random.nextInt(size + 1), randomText(random, random.nextInt(20)));
+			break;
+		case 5:
+			t.split(random.nextInt(size + 1));
+			break;
+		case 6:
+			t.concatenate(new EditTree(randomText(random, random.nextInt(20))));
+			break;
+		default:
+			t.history().closeRun();
+			break;
+		}
+	}
+
+	@Test
+	public void testUndoAndRedoEachEdit() {
+		Random random = new Random(8);
+		EditTree t = new EditTree(randomText(random, 100));
+		EditHistory history = t.recordHistory(false);
+		// without coalescing, every edit that changes the text is one entry
+		ArrayList<String> versions = new ArrayList<String>();
+		versions.add(t.toString());
+		for (int step = 0; step < 400; step++) {
+			randomEdit(random, t);
+			if (!t.toString().equals(versions.get(versions.size() - 1))) {
+				versions.add(t.toString());
+			}
+		}
+		assertEquals(versions.size() - 1, history.undoCount());
+		for (int i = versions.size() - 2; i >= 0; i--) {
+			history.undo();
+			checkTree(versions.get(i), t);
+		}
+		assertFalse(history.canUndo());
+		for (int i = 1; i < versions.size(); i++) {
+			history.redo();
+			checkTree(versions.get(i), t);
+		}
+		assertFalse(history.canRedo());
+	}
+
+	@Test
+	public void testUndoAllAndRedoAllWithRuns() {
+		for (long seed = 0; seed < 10; seed++) {
+			Random random = new Random(seed);
+			String original = randomText(random, 50);
+			EditTree t = new EditTree(original);
+			EditHistory history = t.recordHistory(true);
+			for (int step = 0; step < 300; step++) {
+				randomEdit(random, t);
+			}
+			String last = t.toString();
+			while (history.canUndo()) {
+				history.undo();
+			}
+			checkTree(original, t);
+			while (history.canRedo()) {
+				history.redo();
+			}
+			checkTree(last, t);
+		}
+	}
+
+	@Test
+	public void testTypingIsOneRun() {
+		EditTree t = new EditTree("ab");
+		EditHistory history = t.recordHistory(true);
+		t.add('c');
+		t.add('d');
+		t.add('e');
+		assertEquals(1, history.undoCount());
+		history.undo();
+		assertEquals("ab", t.toString());
+		history.redo();
+		assertEquals("abcde", t.toString());
+	}
+
+	@Test
+	public void testBackspaceAndDeleteKeyRuns() {
+		EditTree t = new EditTree("abcdefgh");
+		EditHistory history = t.recordHistory(true);
+		// backspace from the end
+		t.delete(7);
+		t.delete(6);
+		t.delete(5);
+		assertEquals(1, history.undoCount());
+		history.closeRun();
+		// delete key at the start
+		t.delete(0);
+		t.delete(0);
+		assertEquals(2, history.undoCount());
+		assertEquals("cde", t.toString());
+		history.undo();
+		assertEquals("abcde", t.toString());
+		history.undo();
+		assertEquals("abcdefgh", t.toString());
+	}
+
+	@Test
+	public void testRunsBreak() {
+		EditTree t = new EditTree("abc");
+		EditHistory history = t.recordHistory(true);
+		t.add('d');
+		// typing somewhere else starts a new run
+		t.add('x', 0);
+		assertEquals(2, history.undoCount());
+		t.add('y', 1);
+		assertEquals(2, history.undoCount());
+		// a block delete is its own entry and ends the run
+		t.delete(0, 2);
+		t.add('z', 0);
+		assertEquals(4, history.undoCount());
+		history.undo();
+		history.undo();
+		assertEquals("xyabcd", t.toString());
+		// a new edit forgets what was undone
+		t.add('!');
+		assertFalse(history.canRedo());
+	}
+
+	@Test
+	public void testUnrecordedTreeHasNoHistory() {
+		EditTree t = new EditTree("abc");
+		t.add('d');
+		assertEquals(null, t.history());
+		EditHistory history = t.recordHistory(false);
+		t.add('e');
+		t.stopHistory();
+		t.add('f');
+		assertEquals(1, history.undoCount());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testUndoWithNothingToUndo() {
+		new EditTree("abc").recordHistory(false).undo();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRedoWithNothingToRedo() {
+		EditTree t = new EditTree("abc");
+		EditHistory history = t.recordHistory(false);
+		t.add('d');
+		history.redo();
+	}
+}
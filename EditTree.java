@@ -1,6 +1,24 @@
 package editortrees;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
 
 /**
  * A height-balanced binary tree with rank that could be the basis for a text
@@ -13,12 +31,43 @@ import java.util.ArrayList;
  * 
  * 
  */
-public class EditTree {
+public class EditTree implements EditableTree {
 
 	Node root;
 	private int size;
 	private DisplayableBinaryTree display;
 	private int totalRotationCount;
+	// undo/redo log, or null while edits are not being recorded
+	EditHistory history;
+	// counts the changes to this tree, so a cursor can tell when it is out of date
+	int modCount;
+	// the kinds of Summary kept for each subtree. A new array is made whenever a
+	// kind is added or removed, so split and copies can share it.
+	private Summary<?>[] summaryKinds = NO_SUMMARIES;
+
+	private static final Summary<?>[] NO_SUMMARIES = {};
+	// number of characters writeTo hands to the encoder or writer at a time
+	private static final int CHUNK_CHARS = 1 << 13;
+	// subtrees with more nodes than this are filled by parallel tasks
+	private static final int PARALLEL_FILL_THRESHOLD = 1 << 16;
+	// ranges of more characters than this are copied out by parallel tasks
+	private static final int PARALLEL_COPY_THRESHOLD = 1 << 16;
+	// number of characters indexOf copies out of the tree to search at a time
+	private static final int SEARCH_CHARS = 1 << 14;
+	// snapshot header: "EDTR", the format version, then the number of nodes
+	private static final int SNAPSHOT_MAGIC = 0x45445452;
+	private static final int SNAPSHOT_VERSION = 1;
+	private static final int SNAPSHOT_HEADER_BYTES = 12;
+	// each node is its char followed by its rank shifted left past its balance
+	// code
+	private static final int SNAPSHOT_NODE_BYTES = 6;
+	// ranks must fit above the two balance code bits
+	private static final int SNAPSHOT_MAX_SIZE = (1 << 30) - 1;
+	private static final int SNAPSHOT_BUFFER_BYTES = 1 << 16;
+	// path from the root taken by the current add or delete, and which way it
+	// went at each level
+	private Node[] path;
+	private boolean[] wentLeft;
 
 	/**
 	 * MILESTONE 1 Construct an empty tree
@@ -35,6 +84,7 @@ public class EditTree {
 	 */
 	public EditTree(char ch) {
 		this.root = new Node(ch);
+		this.size = 1;
 		this.totalRotationCount = 0;
 	}
 
@@ -48,6 +98,8 @@ public class EditTree {
 	public EditTree(EditTree e) {
 		this.root = copyTree(e.root);
 		this.totalRotationCount = 0;
+		// the copied nodes share e's summaries, which are never changed in place
+		this.summaryKinds = e.summaryKinds;
 
 	}
 
@@ -66,6 +118,8 @@ public class EditTree {
 		Node node = new Node(e.data, e.balance, e.rank);
 		node.left = copyTree(e.left);
 		node.right = copyTree(e.right);
+		node.newlines = e.newlines;
+		node.summaries = e.summaries;
 		return node;
 
 	}
@@ -79,52 +133,917 @@ public class EditTree {
 	 */
 	public EditTree(String s) {
 		root = fillTree(s, 0, s.length() - 1);
+		this.size = s.length();
 		this.totalRotationCount = 0;
 	}
 
 	/**
-	 * Constructs a tree that would display the string in an in-order transversal
+	 * Constructs a tree that would display the characters lower..upper of s in an
+	 * in-order transversal. Large ranges of a String or CharBuffer are built by
+	 * FillTasks in the common ForkJoinPool, so building from a large input scales
+	 * with the cores. FillTasks call charAt from several threads at once, which
+	 * other CharSequences, such as a cursor-backed view, need not allow, so those
+	 * are built on this thread.
 	 * 
 	 * @param s
 	 * @param lower
 	 * @param upper
 	 * @return Node
 	 */
-	private Node fillTree(String s, int lower, int upper) {
+	private static Node fillTree(CharSequence s, int lower, int upper) {
+		if (upper - lower >= PARALLEL_FILL_THRESHOLD && (s instanceof String || s instanceof CharBuffer)) {
+			return ForkJoinPool.commonPool().invoke(new FillTask(s, lower, upper));
+		}
+		return fillTreeSequentially(s, lower, upper);
+	}
+
+	private static Node fillTreeSequentially(CharSequence s, int lower, int upper) {
 		if (upper < lower) {
 			return Node.NULL_NODE;
 		}
 		// gets the middle value of the string to be the root of the tree
 		int mid = (lower + upper) / 2;
-		Node node = Node.NULL_NODE;
-		// max height possible of height balanced tree of subtrees based on number of
-		// remaining nodes either side of mid value
-		int leftHeight = (int) (Math.log10((mid - lower) / Math.log10(2)));
-		int rightHeight = (int) (Math.log10((upper - mid) / Math.log10(2)));
-		// if heights will be equal then balance code will be SAME
-		if (leftHeight == rightHeight) {
-			node = new Node(s.charAt(mid), Node.Code.SAME, mid - lower);
+		Node node = new Node(s.charAt(mid), balanceOfFilledTree(mid - lower, upper - mid), mid - lower);
+		// sets the right and left node then returns the current node to build tree
+		node.right = fillTreeSequentially(s, mid + 1, upper);
+		node.left = fillTreeSequentially(s, lower, mid - 1);
+		node.updateSummaries();
+		return node;
+	}
+
+	/**
+	 * Fills the same shape as fillTreeSequentially, building the right subtree in
+	 * a forked task while this one builds the left. Every node's rank and balance
+	 * code depend only on the range it is built from, so the halves never need to
+	 * wait on each other.
+	 */
+	private static class FillTask extends RecursiveTask<Node> {
+
+		private static final long serialVersionUID = 1L;
+		private final CharSequence s;
+		private final int lower, upper;
+
+		public FillTask(CharSequence s, int lower, int upper) {
+			this.s = s;
+			this.lower = lower;
+			this.upper = upper;
 		}
-		// if heights are not equal then the balance codes will be tilted right
-		else {
-			node = new Node(s.charAt(mid), Node.Code.RIGHT, mid - lower);
+
+		@Override
+		protected Node compute() {
+			if (this.upper - this.lower < PARALLEL_FILL_THRESHOLD) {
+				return fillTreeSequentially(this.s, this.lower, this.upper);
+			}
+			int mid = (this.lower + this.upper) / 2;
+			Node node = new Node(this.s.charAt(mid), balanceOfFilledTree(mid - this.lower, this.upper - mid),
+					mid - this.lower);
+			FillTask right = new FillTask(this.s, mid + 1, this.upper);
+			right.fork();
+			node.left = new FillTask(this.s, this.lower, mid - 1).compute();
+			node.right = right.join();
+			node.updateSummaries();
+			return node;
+		}
+	}
+
+	/**
+	 * Opens a UTF-8 file as a tree. See open(Path, Charset).
+	 * 
+	 * @param path file to open
+	 * @return a tree whose toString is the contents of the file
+	 * @throws IOException if the file cannot be read or is not valid UTF-8
+	 */
+	public static EditTree open(Path path) throws IOException {
+		return open(path, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Opens a file as a tree in O(N) time without materializing its contents as a
+	 * String. The file is memory-mapped and decoded twice: once to count its
+	 * characters, which fixes the shape of the balanced tree, and once to fill that
+	 * shape in-order as the characters stream by. The result has the same shape as
+	 * EditTree(String) builds.
+	 * 
+	 * @param path    file to open
+	 * @param charset encoding of the file
+	 * @return a tree whose toString is the contents of the file
+	 * @throws IOException if the file cannot be read, is not valid in charset or
+	 *                     changes while it is being read
+	 */
+	public static EditTree open(Path path, Charset charset) throws IOException {
+		int length;
+		try (MappedCharReader reader = new MappedCharReader(path, charset)) {
+			length = reader.countChars();
+		}
+		EditTree tree = new EditTree();
+		try (MappedCharReader reader = new MappedCharReader(path, charset)) {
+			tree.root = fillTree(reader, 0, length - 1);
+			if (reader.hasNext()) {
+				throw new IOException("file changed while it was being opened");
+			}
+		} catch (EOFException e) {
+			throw new IOException("file changed while it was being opened", e);
+		}
+		tree.size = length;
+		return tree;
+	}
+
+	/**
+	 * Same as fillTree(CharSequence, int, int), but takes the characters in order
+	 * from the reader, so the left subtree has to be built before its parent.
+	 * 
+	 * @param reader
+	 * @param lower
+	 * @param upper
+	 * @return Node
+	 * @throws IOException
+	 */
+	private static Node fillTree(MappedCharReader reader, int lower, int upper) throws IOException {
+		if (upper < lower) {
+			return Node.NULL_NODE;
 		}
-		// sets the right and left node and increments size then returns the current
-		// node to build tree
-		node.right = fillTree(s, mid + 1, upper);
-		node.left = fillTree(s, lower, mid - 1);
-		size++;
+		int mid = (lower + upper) / 2;
+		Node left = fillTree(reader, lower, mid - 1);
+		Node node = new Node(reader.next(), balanceOfFilledTree(mid - lower, upper - mid), mid - lower);
+		node.left = left;
+		node.right = fillTree(reader, mid + 1, upper);
+		node.updateSummaries();
 		return node;
 	}
 
+	/**
+	 * The right side of a filled tree never has fewer nodes than the left side, so
+	 * the balance code is either SAME or RIGHT.
+	 * 
+	 * @param leftCount  number of nodes in the left subtree
+	 * @param rightCount number of nodes in the right subtree
+	 * @return the balance code of a node whose subtrees fillTree builds
+	 */
+	private static Node.Code balanceOfFilledTree(int leftCount, int rightCount) {
+		// if heights will be equal then balance code will be SAME, otherwise the
+		// balance codes will be tilted right
+		return heightOfFilledTree(leftCount) == heightOfFilledTree(rightCount) ? Node.Code.SAME : Node.Code.RIGHT;
+	}
+
+	/**
+	 * Splitting at the middle builds a tree of minimum height, which is floor(log2
+	 * count), so it can be found with integer math.
+	 * 
+	 * @param count number of nodes in the subtree
+	 * @return the height of the subtree fillTree builds from count nodes
+	 */
+	private static int heightOfFilledTree(int count) {
+		return 31 - Integer.numberOfLeadingZeros(count);
+	}
+
 	/**
 	 * MILESTONE 1 return the string produced by an in-order traversal of this tree
 	 */
 	@Override
 	public String toString() {
-		StringBuilder sb = new StringBuilder();
-		root.toString(sb);
-		return sb.toString();
+		return new String(this.toCharArray());
+	}
+
+	/**
+	 * Copies the whole tree into a new array in O(N) time, in parallel for large
+	 * trees.
+	 * 
+	 * @return the characters of this tree in order
+	 */
+	public char[] toCharArray() {
+		char[] chars = new char[this.size];
+		this.getChars(0, this.size, chars, 0);
+		return chars;
+	}
+
+	/**
+	 * Copies length characters starting at pos into dst. Each character's position
+	 * finds its node through the ranks in O(log N), so a large range is cut into
+	 * slices that CopyTasks in the common ForkJoinPool locate and fill
+	 * independently, each writing straight into its own part of dst.
+	 * 
+	 * @param pos    position of the first character to copy
+	 * @param length number of characters to copy
+	 * @param dst    where to copy the characters
+	 * @param offset where the first character goes in dst
+	 * @throws IndexOutOfBoundsException unless pos..pos+length-1 are legitimate
+	 *                                   indexes within this tree and
+	 *                                   offset..offset+length-1 within dst.
+	 */
+	public void getChars(int pos, int length, char[] dst, int offset) throws IndexOutOfBoundsException {
+		if (pos < 0 || length < 0 || length > this.size - pos || offset < 0 || length > dst.length - offset) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (length > PARALLEL_COPY_THRESHOLD) {
+			ForkJoinPool.commonPool().invoke(new CopyTask(this.root, pos, length, dst, offset));
+		} else {
+			this.root.getChars(pos, length, dst, offset);
+		}
+	}
+
+	/**
+	 * @param pattern
+	 * @return the position of the first occurrence of pattern, or -1 if there is
+	 *         none
+	 */
+	public int indexOf(String pattern) {
+		return this.indexOf(pattern, 0);
+	}
+
+	/**
+	 * Finds pattern without building a String of the whole tree. The text is
+	 * copied out a block at a time in order, and each block is searched with
+	 * Boyer-Moore-Horspool, whose skips usually look at only a fraction of the
+	 * characters. The search stops at the first block holding a match.
+	 * 
+	 * @param pattern
+	 * @param from    position to start searching at. Like String.indexOf, a
+	 *                negative from searches the whole tree.
+	 * @return the position of the first occurrence of pattern at or after from, or
+	 *         -1 if there is none
+	 */
+	public int indexOf(String pattern, int from) {
+		int length = pattern.length();
+		from = Math.max(from, 0);
+		if (length == 0) {
+			return Math.min(from, this.size);
+		}
+		char[] chars = pattern.toCharArray();
+		char last = chars[length - 1];
+		// how far the pattern can move along when the character under its last
+		// position is c, looked up by the low byte of c. Characters that share a
+		// low byte share the smallest of their shifts, which is still safe.
+		int[] shift = new int[256];
+		Arrays.fill(shift, length);
+		for (int i = 0; i < length - 1; i++) {
+			shift[chars[i] & 0xFF] = length - 1 - i;
+		}
+		char[] block = new char[Math.max(SEARCH_CHARS, 2 * length)];
+		int start = from;
+		while (start <= this.size - length) {
+			int copied = Math.min(block.length, this.size - start);
+			this.getChars(start, copied, block, 0);
+			int i = 0;
+			while (i <= copied - length) {
+				char c = block[i + length - 1];
+				if (c == last && matchesAt(block, i, chars)) {
+					return start + i;
+				}
+				i += shift[c & 0xFF];
+			}
+			// the skips never pass a match, so the next block starts where they
+			// stopped
+			start += i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return true iff chars appears in block starting at i
+	 */
+	private static boolean matchesAt(char[] block, int i, char[] chars) {
+		for (int j = chars.length - 2; j >= 0; j--) {
+			if (block[i + j] != chars[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Starts keeping the occurrences of pattern in each subtree, so they can be
+	 * counted and found in O(log N) time however the tree is edited afterwards.
+	 * Building the index is O(N) once, and after that each edit only updates the
+	 * subtrees on its path, so searching again does not look at unchanged text.
+	 * Each subtree keeps up to pattern.length()-1 characters from each of its ends,
+	 * so this is best for short patterns that are searched for repeatedly, such as
+	 * the highlighted matches of a find-all.
+	 * 
+	 * @param pattern non-empty text to index
+	 * @return the index, which stays up to date until it is closed
+	 * @throws IllegalArgumentException if pattern is empty
+	 */
+	public SearchIndex searchIndex(String pattern) throws IllegalArgumentException {
+		return new SearchIndex(this, pattern);
+	}
+
+	/**
+	 * Writes the contents of this tree to a channel in the given charset without
+	 * building a String. The characters are encoded a fixed-size chunk at a time as
+	 * an in-order walk reaches them, so this uses O(log N) extra memory no matter
+	 * how big the tree is.
+	 * 
+	 * @param channel where to write the encoded characters
+	 * @param charset encoding to use
+	 * @throws IOException if the channel fails or a character cannot be encoded
+	 */
+	public void writeTo(WritableByteChannel channel, Charset charset) throws IOException {
+		CharsetEncoder encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+		ChunkWalker walker = new ChunkWalker(this.root);
+		CharBuffer chars = CharBuffer.allocate(CHUNK_CHARS);
+		ByteBuffer bytes = ByteBuffer.allocateDirect((int) Math.ceil(CHUNK_CHARS * encoder.maxBytesPerChar()));
+		boolean endOfInput = false;
+		while (!endOfInput) {
+			// top up the characters, keeping any the encoder could not use yet (the
+			// first half of a surrogate pair at the end of the last chunk)
+			int read = walker.read(chars.array(), chars.position(), chars.remaining());
+			chars.position(chars.position() + read);
+			endOfInput = !walker.hasNext();
+			chars.flip();
+			CoderResult result = encoder.encode(chars, bytes, endOfInput);
+			if (result.isError()) {
+				result.throwException();
+			}
+			chars.compact();
+			writeFully(channel, bytes);
+		}
+		while (encoder.flush(bytes).isOverflow()) {
+			writeFully(channel, bytes);
+		}
+		writeFully(channel, bytes);
+	}
+
+	/**
+	 * writes all of the bytes that have been put in the buffer, then clears it
+	 */
+	private static void writeFully(WritableByteChannel channel, ByteBuffer bytes) throws IOException {
+		bytes.flip();
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		bytes.clear();
+	}
+
+	/**
+	 * Writes the contents of this tree to a Writer a fixed-size chunk at a time,
+	 * without building a String.
+	 * 
+	 * @param writer where to write the characters
+	 * @throws IOException if the writer fails
+	 */
+	public void writeTo(Writer writer) throws IOException {
+		ChunkWalker walker = new ChunkWalker(this.root);
+		char[] chunk = new char[CHUNK_CHARS];
+		while (walker.hasNext()) {
+			writer.write(chunk, 0, walker.read(chunk, 0, chunk.length));
+		}
+	}
+
+	/**
+	 * Writes the shape and contents of this tree to a channel in O(N) time, so that
+	 * readSnapshot can rebuild the same tree without rebalancing. After a header
+	 * holding the format version and size, the nodes follow in pre-order, each as
+	 * its char and an int packing its rank with its balance code. The sizes of a
+	 * node's subtrees follow from its rank, so no child links are written.
+	 * 
+	 * @param channel where to write the snapshot
+	 * @throws IOException if the channel fails, or if this tree holds 2^30 or
+	 *                     more characters, whose ranks do not fit the format
+	 */
+	public void writeSnapshot(WritableByteChannel channel) throws IOException {
+		if (this.size > SNAPSHOT_MAX_SIZE) {
+			throw new IOException("a snapshot holds at most 2^30 - 1 characters");
+		}
+		ByteBuffer bytes = ByteBuffer.allocateDirect(SNAPSHOT_BUFFER_BYTES);
+		bytes.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(this.size);
+		// pre-order walk with an explicit stack of right subtrees still to visit
+		Node[] stack = new Node[Node.MAX_HEIGHT];
+		int depth = 0;
+		Node node = this.root;
+		while (node != Node.NULL_NODE || depth > 0) {
+			if (node == Node.NULL_NODE) {
+				node = stack[--depth];
+			}
+			if (bytes.remaining() < SNAPSHOT_NODE_BYTES) {
+				writeFully(channel, bytes);
+			}
+			bytes.putChar(node.data).putInt(node.rank << 2 | node.balance.ordinal());
+			if (node.right != Node.NULL_NODE) {
+				stack[depth++] = node.right;
+			}
+			node = node.left;
+		}
+		writeFully(channel, bytes);
+	}
+
+	/**
+	 * Rebuilds a tree written by writeSnapshot in O(N) time. The nodes are linked
+	 * up exactly as they were saved, so no rotations are done. Each balance code is
+	 * checked against the heights of the node's subtrees as they are rebuilt, so a
+	 * damaged snapshot cannot make a tree whose fastHeight is wrong.
+	 * 
+	 * @param channel where to read the snapshot from
+	 * @return a tree with the same shape, ranks, balance codes and contents as the
+	 *         one that was saved
+	 * @throws IOException if the channel fails or does not hold a valid snapshot
+	 */
+	public static EditTree readSnapshot(ReadableByteChannel channel) throws IOException {
+		SnapshotReader reader = new SnapshotReader(channel);
+		reader.require(SNAPSHOT_HEADER_BYTES);
+		if (reader.bytes.getInt() != SNAPSHOT_MAGIC) {
+			throw new IOException("not an EditTree snapshot");
+		}
+		int version = reader.bytes.getInt();
+		if (version != SNAPSHOT_VERSION) {
+			throw new IOException("unsupported snapshot version " + version);
+		}
+		int size = reader.bytes.getInt();
+		if (size < 0 || size > SNAPSHOT_MAX_SIZE) {
+			throw new IOException("corrupt snapshot: bad size");
+		}
+		EditTree tree = new EditTree();
+		tree.root = readSnapshot(reader, size, 0);
+		tree.size = size;
+		return tree;
+	}
+
+	/**
+	 * reads the pre-order nodes of a subtree of the given size
+	 * 
+	 * @param reader
+	 * @param size   number of nodes in the subtree
+	 * @param depth  depth of the subtree's root, which is checked so that a corrupt
+	 *               snapshot cannot recurse without bound
+	 * @return Node
+	 * @throws IOException
+	 */
+	private static Node readSnapshot(SnapshotReader reader, int size, int depth) throws IOException {
+		if (size == 0) {
+			return Node.NULL_NODE;
+		}
+		if (depth == Node.MAX_HEIGHT) {
+			throw new IOException("corrupt snapshot: tree is too tall");
+		}
+		reader.require(SNAPSHOT_NODE_BYTES);
+		char data = reader.bytes.getChar();
+		int rankAndCode = reader.bytes.getInt();
+		int rank = rankAndCode >>> 2;
+		int code = rankAndCode & 3;
+		if (rank >= size || code >= Node.Code.values().length) {
+			throw new IOException("corrupt snapshot: bad rank or balance code");
+		}
+		Node node = new Node(data, Node.Code.values()[code], rank);
+		node.left = readSnapshot(reader, rank, depth + 1);
+		node.right = readSnapshot(reader, size - rank - 1, depth + 1);
+		// the subtrees' codes were already checked, so their heights are right,
+		// and finding them costs O(N) in all since the tree is balanced
+		int leftHeight = node.left.fastHeight();
+		int rightHeight = node.right.fastHeight();
+		Node.Code balance = rightHeight == leftHeight ? Node.Code.SAME
+				: rightHeight == leftHeight + 1 ? Node.Code.RIGHT
+						: leftHeight == rightHeight + 1 ? Node.Code.LEFT : null;
+		if (node.balance != balance) {
+			throw new IOException("corrupt snapshot: balance code does not match the heights");
+		}
+		node.updateSummaries();
+		return node;
+	}
+
+	/**
+	 * Views this tree as a CharSequence without copying it, for regex and parsing
+	 * libraries. Reading the characters in order costs O(1) amortized each, and
+	 * subSequence returns another view instead of a copy. The view's length is
+	 * fixed when it is made, so it should not be used after the tree is edited.
+	 * 
+	 * @return a view of the whole tree
+	 */
+	public CharSequence asCharSequence() {
+		return new TreeCharSequence(this, 0, this.size);
+	}
+
+	/**
+	 * @return the number of lines in this tree, which is one more than the number
+	 *         of newlines
+	 */
+	public int lineCount() {
+		return root.newlines + 1;
+	}
+
+	/**
+	 * Finds the line holding a position in O(log N) time, using the newline count
+	 * kept in each subtree.
+	 * 
+	 * @param pos position in the tree, from 0 to the size of the tree inclusive
+	 * @return the line pos is on, counting from 0, which is the number of
+	 *         newlines before pos
+	 * @throws IndexOutOfBoundsException if pos is negative or too large for this
+	 *                                   tree.
+	 */
+	public int lineOfOffset(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		return root.newlinesBefore(pos);
+	}
+
+	/**
+	 * Finds where a line starts in O(log N) time, using the newline count kept in
+	 * each subtree.
+	 * 
+	 * @param line line number, counting from 0
+	 * @return the position of the first character of the line, which is just
+	 *         after the newline that ends the line before it
+	 * @throws IndexOutOfBoundsException if line is negative or not less than
+	 *                                   lineCount().
+	 */
+	public int offsetOfLine(int line) throws IndexOutOfBoundsException {
+		if (line < 0 || line > root.newlines) {
+			throw new IndexOutOfBoundsException();
+		}
+		return line == 0 ? 0 : root.positionOfNewline(line) + 1;
+	}
+
+	/**
+	 * @param line line number, counting from 0
+	 * @return the characters of the line, without the newline that ends it
+	 * @throws IndexOutOfBoundsException if line is negative or not less than
+	 *                                   lineCount().
+	 */
+	public String getLine(int line) throws IndexOutOfBoundsException {
+		int start = this.offsetOfLine(line);
+		int end = line == root.newlines ? this.size : root.positionOfNewline(line + 1);
+		return this.get(start, end - start);
+	}
+
+	/**
+	 * Starts keeping kind's summary for every subtree, so that prefixSummary and
+	 * search can answer in O(log N) time. The summaries are made the first time
+	 * they are needed, which is O(N) once, and after that each edit only makes the
+	 * ones on its path again. Each kind is kept apart from the others, so adding
+	 * one does not make the others again. Adding a kind that is already kept does
+	 * nothing.
+	 * 
+	 * @param kind
+	 */
+	public void addSummary(Summary<?> kind) {
+		if (indexOf(this.summaryKinds, kind) >= 0) {
+			return;
+		}
+		Summary<?>[] added = Arrays.copyOf(this.summaryKinds, this.summaryKinds.length + 1);
+		added[this.summaryKinds.length] = kind;
+		this.summaryKinds = added;
+	}
+
+	/**
+	 * Stops keeping kind's summary, and drops the summaries of that kind made so
+	 * far from every node in O(N) time, leaving the other kinds' alone. Removing a
+	 * kind that is not kept does nothing.
+	 * 
+	 * @param kind
+	 */
+	public void removeSummary(Summary<?> kind) {
+		int index = indexOf(this.summaryKinds, kind);
+		if (index < 0) {
+			return;
+		}
+		Summary<?>[] removed = new Summary<?>[this.summaryKinds.length - 1];
+		System.arraycopy(this.summaryKinds, 0, removed, 0, index);
+		System.arraycopy(this.summaryKinds, index + 1, removed, index, removed.length - index);
+		this.summaryKinds = removed;
+		root.dropSummary(kind);
+	}
+
+	/**
+	 * @param kind a summary added with addSummary
+	 * @return the summary of the whole tree
+	 * @throws IllegalArgumentException if kind was not added to this tree
+	 */
+	public <S> S summary(Summary<S> kind) throws IllegalArgumentException {
+		return this.prefixSummary(kind, this.size);
+	}
+
+	/**
+	 * Summarizes a range in O(log N) time, by combining the summaries of the
+	 * subtrees that lie wholly inside it with the nodes on the paths down to its
+	 * two ends.
+	 * 
+	 * @param kind   a summary added with addSummary
+	 * @param pos    position of the first character to summarize
+	 * @param length number of characters to summarize
+	 * @return the summary of the characters from pos to pos+length-1
+	 * @throws IllegalArgumentException  if kind was not added to this tree
+	 * @throws IndexOutOfBoundsException unless pos and length give a range within
+	 *                                   this tree.
+	 */
+	public <S> S summary(Summary<S> kind, int pos, int length)
+			throws IllegalArgumentException, IndexOutOfBoundsException {
+		this.checkSummary(kind);
+		if (pos < 0 || length < 0 || length > this.size - pos) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (length == 0) {
+			return kind.identity();
+		}
+		return root.summary(kind, this.size, pos, pos + length);
+	}
+
+	/**
+	 * Summarizes the characters before pos in O(log N) time, by combining the
+	 * summaries of the left subtrees the walk down to pos passes.
+	 * 
+	 * @param kind a summary added with addSummary
+	 * @param pos  number of characters to summarize. Valid positions range from 0
+	 *             to the size of the tree, inclusive.
+	 * @return the summary of the characters before pos
+	 * @throws IllegalArgumentException  if kind was not added to this tree
+	 * @throws IndexOutOfBoundsException if pos is negative or too large for this
+	 *                                   tree.
+	 */
+	public <S> S prefixSummary(Summary<S> kind, int pos)
+			throws IllegalArgumentException, IndexOutOfBoundsException {
+		this.checkSummary(kind);
+		if (pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		S summary = kind.identity();
+		Node current = root;
+		while (current != Node.NULL_NODE) {
+			if (pos <= current.rank) {
+				current = current.left;
+			} else {
+				// everything up to and including this node is before pos
+				summary = kind.combine(summary, current.left.summary(kind));
+				summary = kind.combine(summary, kind.of(current.data));
+				pos -= current.rank + 1;
+				current = current.right;
+			}
+		}
+		return summary;
+	}
+
+	/**
+	 * Finds the shortest prefix of the tree whose summary is reached, in O(log N)
+	 * time. reached must stay true once it is true for a prefix, as it does for
+	 * "at least k newlines" over a count, so that the walk can tell from a left
+	 * subtree's summary which side the answer is on.
+	 * 
+	 * @param kind    a summary added with addSummary
+	 * @param reached test of the summary of a prefix
+	 * @return the length of the shortest prefix whose summary is reached, from 0
+	 *         to the size of the tree, or -1 if even the whole tree's is not
+	 * @throws IllegalArgumentException if kind was not added to this tree
+	 */
+	public <S> int search(Summary<S> kind, Predicate<? super S> reached) throws IllegalArgumentException {
+		this.checkSummary(kind);
+		S summary = kind.identity();
+		if (reached.test(summary)) {
+			return 0;
+		}
+		int before = 0;
+		Node current = root;
+		while (current != Node.NULL_NODE) {
+			S withLeft = kind.combine(summary, current.left.summary(kind));
+			if (reached.test(withLeft)) {
+				current = current.left;
+				continue;
+			}
+			summary = kind.combine(withLeft, kind.of(current.data));
+			before += current.rank + 1;
+			if (reached.test(summary)) {
+				return before;
+			}
+			current = current.right;
+		}
+		return -1;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if kind was not added to this tree
+	 */
+	private void checkSummary(Summary<?> kind) throws IllegalArgumentException {
+		if (indexOf(this.summaryKinds, kind) < 0) {
+			throw new IllegalArgumentException("summary was not added to this tree");
+		}
+	}
+
+	/**
+	 * @return the position of kind in kinds, or -1 if it is not there
+	 */
+	private static int indexOf(Summary<?>[] kinds, Summary<?> kind) {
+		for (int i = 0; i < kinds.length; i++) {
+			if (kinds[i] == kind) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the number of bytes this tree's text takes in UTF-8
+	 */
+	public long utf8Length() {
+		return this.summary(this.utf8()).bytes;
+	}
+
+	/**
+	 * @return the number of Unicode code points in this tree, counting a surrogate
+	 *         pair as one
+	 */
+	public int codePointCount() {
+		return this.summary(this.utf8()).codePoints;
+	}
+
+	/**
+	 * Finds the UTF-8 byte offset of a char position in O(log N) time, without
+	 * encoding the text before it.
+	 * 
+	 * @param pos char position in the tree, from 0 to the size of the tree
+	 *            inclusive
+	 * @return the number of bytes the characters before pos take in UTF-8
+	 * @throws IndexOutOfBoundsException if pos is negative or too large for this
+	 *                                   tree.
+	 */
+	public long utf8OffsetOf(int pos) throws IndexOutOfBoundsException {
+		return this.prefixSummary(this.utf8(), pos).bytes;
+	}
+
+	/**
+	 * @param pos char position in the tree, from 0 to the size of the tree
+	 *            inclusive
+	 * @return the number of code points before pos, as String.codePointCount(0,
+	 *         pos) would count them
+	 * @throws IndexOutOfBoundsException if pos is negative or too large for this
+	 *                                   tree.
+	 */
+	public int codePointOffsetOf(int pos) throws IndexOutOfBoundsException {
+		return this.prefixSummary(this.utf8(), pos).codePoints;
+	}
+
+	/**
+	 * Finds the char position of a code point offset in O(log N) time.
+	 * 
+	 * @param codePoints number of code points before the position, from 0 to
+	 *                   codePointCount() inclusive
+	 * @return the char position just after that many code points, which is never
+	 *         between the two halves of a surrogate pair
+	 * @throws IndexOutOfBoundsException if codePoints is negative or more than
+	 *                                   the tree has.
+	 */
+	public int offsetOfCodePoint(int codePoints) throws IndexOutOfBoundsException {
+		int pos = this.search(this.utf8(), length -> length.codePoints >= codePoints);
+		if (codePoints < 0 || pos < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		return this.skipLowSurrogate(pos);
+	}
+
+	/**
+	 * Finds the character that a UTF-8 byte offset falls in, in O(log N) time.
+	 * 
+	 * @param bytes byte offset, from 0 to utf8Length() inclusive
+	 * @return the char position of the character holding that byte, which is the
+	 *         start of the surrogate pair for a byte of a pair, or the size of the
+	 *         tree for utf8Length()
+	 * @throws IndexOutOfBoundsException if bytes is negative or more than the
+	 *                                   tree's UTF-8 length.
+	 */
+	public int offsetOfUtf8(long bytes) throws IndexOutOfBoundsException {
+		if (bytes < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		int pos = this.search(this.utf8(), length -> length.bytes > bytes);
+		if (pos < 0) {
+			if (bytes == this.utf8Length()) {
+				return this.size;
+			}
+			throw new IndexOutOfBoundsException();
+		}
+		// pos is the shortest prefix holding the byte, so it ends with its character
+		pos--;
+		if (pos > 0 && Character.isLowSurrogate(this.get(pos)) && Character.isHighSurrogate(this.get(pos - 1))) {
+			pos--;
+		}
+		return pos;
+	}
+
+	/**
+	 * @return pos, or the position after it if pos is between the two halves of a
+	 *         surrogate pair
+	 */
+	private int skipLowSurrogate(int pos) {
+		if (pos > 0 && pos < this.size && Character.isLowSurrogate(this.get(pos))
+				&& Character.isHighSurrogate(this.get(pos - 1))) {
+			return pos + 1;
+		}
+		return pos;
+	}
+
+	/**
+	 * @return the UTF-8 summary, which is added the first time it is needed
+	 */
+	private Summary<Utf8Length> utf8() {
+		this.addSummary(Utf8Length.KIND);
+		return Utf8Length.KIND;
+	}
+
+	/**
+	 * Hashes a range in O(log N) time from the fingerprints kept for each subtree,
+	 * without reading its characters. Equal text always hashes the same, in this
+	 * tree or any other, and different text of length n collides with probability
+	 * less than n/2^61. Hashes are only comparable within one run of the program.
+	 * 
+	 * @param pos    position of the first character to hash
+	 * @param length number of characters to hash
+	 * @return the hash of the characters from pos to pos+length-1
+	 * @throws IndexOutOfBoundsException unless pos and length give a range within
+	 *                                   this tree.
+	 */
+	public long hash(int pos, int length) throws IndexOutOfBoundsException {
+		return this.summary(this.fingerprint(), pos, length).hash;
+	}
+
+	/**
+	 * @return the hash of this tree's whole text, as hash(0, size()) would give
+	 */
+	public long contentHash() {
+		return this.summary(this.fingerprint()).hash;
+	}
+
+	/**
+	 * Compares this tree's text with other's in O(log N) time by their hashes,
+	 * for dirty checks and deduplication without building either String. The
+	 * first call on each tree hashes it in O(N), and its edits keep the hash up to
+	 * date after that.
+	 * 
+	 * @param other
+	 * @return true iff the trees hold the same text, except with probability less
+	 *         than size()/2^61 when they do not
+	 */
+	public boolean contentEquals(EditTree other) {
+		return this.size == other.size && this.contentHash() == other.contentHash();
+	}
+
+	/**
+	 * Finds how many characters this tree and other start with in common, by a
+	 * binary search over the hashes of their prefixes, in O(log^2 N) time.
+	 * 
+	 * @param other
+	 * @return the length of the longest common prefix of the two trees' text
+	 */
+	public int commonPrefixLength(EditTree other) {
+		int low = 0;
+		int high = Math.min(this.size, other.size);
+		// the first low characters match and the first high+1 do not
+		while (low < high) {
+			int length = low + (high - low + 1) / 2;
+			if (this.prefixSummary(this.fingerprint(), length).hash == other.prefixSummary(other.fingerprint(),
+					length).hash) {
+				low = length;
+			} else {
+				high = length - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Finds how many characters this tree and other end with in common, by a
+	 * binary search over the hashes of their suffixes, in O(log^2 N) time. With
+	 * commonPrefixLength it narrows a diff of the two trees down to the part in
+	 * between.
+	 * 
+	 * @param other
+	 * @return the length of the longest common suffix of the two trees' text
+	 */
+	public int commonSuffixLength(EditTree other) {
+		int low = 0;
+		int high = Math.min(this.size, other.size);
+		while (low < high) {
+			int length = low + (high - low + 1) / 2;
+			if (this.hash(this.size - length, length) == other.hash(other.size - length, length)) {
+				low = length;
+			} else {
+				high = length - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the fingerprint summary, which is added the first time it is needed
+	 */
+	private Summary<Fingerprint> fingerprint() {
+		this.addSummary(Fingerprint.KIND);
+		return Fingerprint.KIND;
+	}
+
+	/**
+	 * Makes a cursor whose caret is before the character at pos, for scanning
+	 * forward and backward or editing at the caret without searching from the root
+	 * each time.
+	 * 
+	 * @param pos number of characters before the caret. Valid positions range from
+	 *            0 to the size of the tree, inclusive.
+	 * @return a cursor at pos
+	 * @throws IndexOutOfBoundsException if pos is negative or too large for this
+	 *                                   tree.
+	 */
+	public CharCursor cursor(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		return new CharCursor(this, pos);
 	}
 
 	/**
@@ -134,6 +1053,7 @@ public class EditTree {
 	 * @return the number of nodes in this tree, not counting the NULL_NODE if you
 	 *         have one.
 	 */
+	@Override
 	public int size() {
 		return this.size; // nothing else to do here.
 	}
@@ -143,6 +1063,7 @@ public class EditTree {
 	 * 
 	 * @param ch character to add to the end of this tree.
 	 */
+	@Override
 	public void add(char ch) {
 		// Notes:
 		// 1. Please document chunks of code as you go. Why are you doing what
@@ -153,12 +1074,9 @@ public class EditTree {
 		// you!
 		// 2. Unit tests are cumulative, and many things are based on add(), so
 		// make sure that you get this one correct.
-		BooleanContainer booleanContainer = new BooleanContainer(true, 0, '\0');
-		root = root.add(ch, booleanContainer);
-		// make sure to add the rotations if any to the total rotation count
-		this.totalRotationCount += booleanContainer.rotationCount;
-		this.size++;
-		// need to walk back up for balance codes
+		// appending is adding at the last position, which always walks the right
+		// spine, so the general add handles it without a separate recursion
+		this.add(ch, this.size);
 	}
 
 	/**
@@ -172,19 +1090,246 @@ public class EditTree {
 	 * @throws IndexOutOfBoundsException if pos is negative or too large for this
 	 *                                   tree.
 	 */
+	@Override
 	public void add(char ch, int index) throws IndexOutOfBoundsException {
 		// You can use your O(1) size field/method to determine if the index is valid.
 		// makes sure the index is valid
 		if (this.size < index || index < 0) {
 			throw new IndexOutOfBoundsException();
+		}
+		int pos = index;
+		// walk down to the leaf position, recording the path so that we can walk
+		// back up it without recursion
+		Node[] path = this.path();
+		int depth = 0;
+		Node current = root;
+		while (current != Node.NULL_NODE) {
+			path[depth] = current;
+			if (index > current.rank) {
+				// since we are adding to the right, no incrementing is needed to rank
+				index -= current.rank + 1;
+				wentLeft[depth] = false;
+				current = current.right;
+			} else {
+				// since we are adding to the left, we want to increment the rank
+				current.rank++;
+				wentLeft[depth] = true;
+				current = current.left;
+			}
+			depth++;
+		}
+		addBelow(depth, new Node(ch), pos);
+	}
+
+	/**
+	 * Hangs a new leaf below path[depth-1], whose rank has already been updated on
+	 * the way down, and rebalances.
+	 * 
+	 * @param depth number of nodes on the recorded path
+	 * @param node  the new leaf
+	 * @param pos   in-order position of the new leaf
+	 * @return the level of the path that a rotation replaced, or depth if nothing
+	 *         was rotated
+	 */
+	int addBelow(int depth, Node node, int pos) {
+		if (this.history != null) {
+			this.history.recordInsert(pos, 1);
+		}
+		// every subtree on the path gains the new character
+		int newlines = Node.newlinesIn(node.data);
+		for (int level = 0; level < depth; level++) {
+			path[level].newlines += newlines;
+			path[level].summaries = null;
+		}
+		replaceChild(depth, node);
+		int rotated = rebalanceAfterAdd(depth);
+		this.size++;
+		this.modCount++;
+		return rotated;
+	}
+
+	/**
+	 * Walks back up the recorded path after a node was added below path[depth-1].
+	 * Each level's subtree grew taller until a balance code tips to SAME or a
+	 * rotation restores the old height, so we can stop there.
+	 * 
+	 * @param depth number of nodes on the recorded path
+	 * @return the level of the path that a rotation replaced, or depth if nothing
+	 *         was rotated
+	 */
+	private int rebalanceAfterAdd(int depth) {
+		for (int level = depth - 1; level >= 0; level--) {
+			Node node = path[level];
+			if (wentLeft[level]) {
+				if (node.balance == Node.Code.SAME) {
+					node.balance = Node.Code.LEFT;
+					continue;
+				} else if (node.balance == Node.Code.RIGHT) {
+					node.balance = Node.Code.SAME;
+					return depth;
+				} else if (node.left.balance == Node.Code.RIGHT) {
+					// the child leans the other way, so a double rotation is needed
+					this.totalRotationCount += 2;
+					replaceChild(level, node.doubleRightRotation(node, node.left.right, node.left));
+				} else {
+					this.totalRotationCount += 1;
+					replaceChild(level, node.singleRightRotation(node, node.left));
+				}
+			} else {
+				if (node.balance == Node.Code.SAME) {
+					node.balance = Node.Code.RIGHT;
+					continue;
+				} else if (node.balance == Node.Code.LEFT) {
+					node.balance = Node.Code.SAME;
+					return depth;
+				} else if (node.right.balance == Node.Code.LEFT) {
+					this.totalRotationCount += 2;
+					replaceChild(level, node.doubleLeftRotation(node, node.right.left, node.right));
+				} else {
+					this.totalRotationCount += 1;
+					replaceChild(level, node.singleLeftRotation(node, node.right));
+				}
+			}
+			return level;
+		}
+		return depth;
+	}
+
+	/**
+	 * Walks back up the recorded path after a node was removed below
+	 * path[depth-1]. Each level's subtree got shorter until a balance code tips
+	 * away from SAME or a rotation around a balanced child keeps the old height.
+	 * 
+	 * @param depth number of nodes on the recorded path
+	 * @return the highest level of the path that a rotation replaced, or depth if
+	 *         nothing was rotated
+	 */
+	private int rebalanceAfterDelete(int depth) {
+		int rotated = depth;
+		for (int level = depth - 1; level >= 0; level--) {
+			Node node = path[level];
+			Node temp;
+			if (wentLeft[level]) {
+				if (node.balance == Node.Code.LEFT) {
+					node.balance = Node.Code.SAME;
+					continue;
+				} else if (node.balance == Node.Code.SAME) {
+					node.balance = Node.Code.RIGHT;
+					return rotated;
+				} else if (node.right.balance == Node.Code.RIGHT) {
+					this.totalRotationCount += 1;
+					temp = node.singleLeftRotation(node, node.right);
+				} else if (node.right.balance == Node.Code.SAME) {
+					// the subtree keeps its height, so no need to continue rotating
+					this.totalRotationCount += 1;
+					temp = node.singleLeftRotation(node, node.right);
+					temp.balance = Node.Code.LEFT;
+					temp.left.balance = Node.Code.RIGHT;
+					replaceChild(level, temp);
+					return level;
+				} else {
+					this.totalRotationCount += 2;
+					temp = node.doubleLeftRotation(node, node.right.left, node.right);
+				}
+			} else {
+				if (node.balance == Node.Code.RIGHT) {
+					node.balance = Node.Code.SAME;
+					continue;
+				} else if (node.balance == Node.Code.SAME) {
+					node.balance = Node.Code.LEFT;
+					return rotated;
+				} else if (node.left.balance == Node.Code.LEFT) {
+					this.totalRotationCount += 1;
+					temp = node.singleRightRotation(node, node.left);
+				} else if (node.left.balance == Node.Code.SAME) {
+					this.totalRotationCount += 1;
+					temp = node.singleRightRotation(node, node.left);
+					temp.balance = Node.Code.RIGHT;
+					temp.right.balance = Node.Code.LEFT;
+					replaceChild(level, temp);
+					return level;
+				} else {
+					this.totalRotationCount += 2;
+					temp = node.doubleRightRotation(node, node.left.right, node.left);
+				}
+			}
+			replaceChild(level, temp);
+			rotated = level;
+		}
+		return rotated;
+	}
+
+	/**
+	 * Hangs subtree where path[level] was: under path[level-1] on the side the
+	 * path went, or as the root when level is 0.
+	 * 
+	 * @param level
+	 * @param subtree
+	 */
+	private void replaceChild(int level, Node subtree) {
+		if (level == 0) {
+			root = subtree;
+		} else if (wentLeft[level - 1]) {
+			path[level - 1].left = subtree;
 		} else {
-			BooleanContainer booleanContainer = new BooleanContainer(true, 0, '\0');
-			root = root.add(ch, index, booleanContainer);
-			// make sure to add the rotations if any to the total rotation count
-			this.totalRotationCount += booleanContainer.rotationCount;
-			this.size++;
+			path[level - 1].right = subtree;
 		}
-		// need to walk back up for balance codes
+	}
+
+	/**
+	 * The path buffers are allocated the first time this tree is edited and then
+	 * reused, so adds and deletes do not allocate anything but the new node.
+	 * 
+	 * @return the buffer for the nodes on the path from the root
+	 */
+	private Node[] path() {
+		if (path == null) {
+			path = new Node[Node.MAX_HEIGHT];
+			wentLeft = new boolean[Node.MAX_HEIGHT];
+		}
+		return path;
+	}
+
+	/**
+	 * Takes a path found some other way, such as by a cursor, as the recorded path
+	 * for addBelow or removeAt.
+	 * 
+	 * @param nodes the nodes on the path from the root
+	 * @param left  which way the path went at each level
+	 * @param count number of levels to copy
+	 */
+	void loadPath(Node[] nodes, boolean[] left, int count) {
+		System.arraycopy(nodes, 0, this.path(), 0, count);
+		System.arraycopy(left, 0, this.wentLeft, 0, count);
+	}
+
+	/**
+	 * Starts recording the edits made to this tree so they can be undone and
+	 * redone, replacing any history that was being recorded. While a history is
+	 * recorded, split and delete(pos, length) copy the characters they remove for
+	 * it, so they take O(log N + M) time for M removed characters.
+	 * 
+	 * @param coalesceRuns true to undo runs of typed or deleted characters as one
+	 *                     edit
+	 * @return the history of this tree
+	 */
+	public EditHistory recordHistory(boolean coalesceRuns) {
+		this.history = new EditHistory(this, coalesceRuns);
+		return this.history;
+	}
+
+	/**
+	 * @return the history being recorded, or null if there is none
+	 */
+	public EditHistory history() {
+		return this.history;
+	}
+
+	/**
+	 * Stops recording edits and forgets the history.
+	 */
+	public void stopHistory() {
+		this.history = null;
 	}
 
 	/**
@@ -217,12 +1362,12 @@ public class EditTree {
 	 *                                   But you can still use your size
 	 *                                   field/method to determine this.
 	 */
+	@Override
 	public char get(int index) throws IndexOutOfBoundsException {
 		if (this.size <= index || index < 0) {
 			throw new IndexOutOfBoundsException();
-		} else {
-			return root.get(index);
 		}
+		return root.get(index);
 	}
 
 	// MILESTONE 1: They next two "slow" methods are useful for testing, debugging
@@ -287,6 +1432,7 @@ public class EditTree {
 	 *
 	 * @return number of rotations since this tree was created.
 	 */
+	@Override
 	public int totalRotationCount() {
 		return totalRotationCount;
 	}
@@ -318,6 +1464,7 @@ public class EditTree {
 	 * 
 	 * @return the height of this tree
 	 */
+	@Override
 	public int fastHeight() {
 		return root.fastHeight();
 	}
@@ -329,6 +1476,7 @@ public class EditTree {
 	 * @return the character that is deleted
 	 * @throws IndexOutOfBoundsException
 	 */
+	@Override
 	public char delete(int pos) throws IndexOutOfBoundsException {
 		// Implementation requirement:
 		// When deleting a node with two children, you normally replace the
@@ -338,11 +1486,109 @@ public class EditTree {
 		if (pos >= size || pos < 0) {
 			throw new IndexOutOfBoundsException();
 		}
-		BooleanContainer booleanContainer = new BooleanContainer(true, 0, '\0');
-		root = root.delete(pos, booleanContainer);
-		this.totalRotationCount += booleanContainer.rotationCount;
+		Node[] path = this.path();
+		int depth = 0;
+		Node current = root;
+		int index = pos;
+		// walk down to the node, recording the path
+		while (index != current.rank) {
+			path[depth] = current;
+			if (index > current.rank) {
+				index -= current.rank + 1;
+				wentLeft[depth] = false;
+				current = current.right;
+			} else {
+				//subract from the rank since the node is in the left subtree
+				current.rank--;
+				wentLeft[depth] = true;
+				current = current.left;
+			}
+			depth++;
+		}
+		path[depth] = current;
+		char deleted = current.data;
+		removeAt(depth, pos);
+		return deleted;
+	}
+
+	/**
+	 * Removes the node path[depth], whose ancestors' ranks have already been
+	 * updated on the way down, and rebalances. A node with two children takes its
+	 * successor's data and the successor is removed instead.
+	 * 
+	 * @param depth level of the node on the recorded path
+	 * @param pos   in-order position of the node
+	 * @return the highest level of the path that a rotation replaced, or the
+	 *         number of nodes left on the path if nothing was rotated
+	 */
+	int removeAt(int depth, int pos) {
+		Node current = path[depth];
+		char deleted = current.data;
+		// every subtree on the path loses the deleted character
+		int newlines = Node.newlinesIn(deleted);
+		for (int level = 0; level < depth; level++) {
+			path[level].newlines -= newlines;
+		}
+		if (current.left != Node.NULL_NODE && current.right != Node.NULL_NODE) {
+			// two children: take the in-order successor's data, then remove the
+			// successor instead, which is the first node of the right subtree
+			Node target = current;
+			target.newlines -= newlines;
+			wentLeft[depth] = false;
+			depth++;
+			int below = depth;
+			current = current.right;
+			while (current.left != Node.NULL_NODE) {
+				path[depth] = current;
+				current.rank--;
+				wentLeft[depth] = true;
+				depth++;
+				current = current.left;
+			}
+			target.data = current.data;
+			// the subtrees between target and the successor lose the successor
+			for (int level = below; level < depth; level++) {
+				path[level].newlines -= Node.newlinesIn(current.data);
+			}
+		}
+		for (int level = 0; level < depth; level++) {
+			path[level].summaries = null;
+		}
+		// no children or one child: that child takes the node's place
+		replaceChild(depth, current.left == Node.NULL_NODE ? current.right : current.left);
+		int rotated = rebalanceAfterDelete(depth);
 		this.size--;
-		return booleanContainer.data; // replace by a real calculation.
+		this.modCount++;
+		if (this.history != null) {
+			this.history.recordDelete(pos, deleted);
+		}
+		return rotated;
+	}
+
+	/**
+	 * Deletes a whole range in O(log N) time by splitting out the range and
+	 * concatenating what was on either side of it.
+	 * 
+	 * @param pos    position of the first character to delete
+	 * @param length number of characters to delete
+	 * @return a tree holding the deleted characters
+	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
+	 *                                   legitimate indexes within this tree.
+	 */
+	public EditTree delete(int pos, int length) throws IndexOutOfBoundsException {
+		if (pos < 0 || length < 0 || length > this.size - pos) {
+			throw new IndexOutOfBoundsException();
+		}
+		EditHistory history = this.history;
+		this.history = null;
+		EditTree deleted = this.split(pos);
+		this.concatenate(deleted.split(length));
+		this.history = history;
+		if (history != null && deleted.size > 0) {
+			// the caller gets the deleted tree, so the history keeps its own copy
+			history.recordDelete(pos, new EditTree(deleted));
+		}
+		return deleted;
 	}
 
 	/**
@@ -356,13 +1602,319 @@ public class EditTree {
 	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
 	 *                                   legitimate indexes within this tree.
 	 */
+	@Override
 	public String get(int pos, int length) throws IndexOutOfBoundsException {
-		if (pos < 0 || pos + length > this.size()) {
+		if (pos < 0 || length < 0 || length > this.size() - pos) {
+			throw new IndexOutOfBoundsException();
+		}
+		char[] chars = new char[length];
+		this.getChars(pos, length, chars, 0);
+		return new String(chars);
+	}
+
+	/**
+	 * Appends the contents of other to the end of this tree in O(log N) time. The
+	 * nodes of other are moved into this tree, so other is left empty and its
+	 * history, if any, is cleared.
+	 * 
+	 * @param other tree whose characters are appended
+	 * @throws IllegalArgumentException if other is this tree
+	 */
+	public void concatenate(EditTree other) {
+		if (other == this) {
+			throw new IllegalArgumentException("cannot concatenate a tree with itself");
+		}
+		if (other.size == 0) {
+			return;
+		}
+		if (this.history != null) {
+			this.history.recordInsert(this.size, other.size);
+		}
+		if (other.history != null) {
+			other.history.clear();
+		}
+		this.modCount++;
+		other.modCount++;
+		if (this.size == 0) {
+			this.root = other.root;
+			this.size = other.size;
+		} else {
+			// other's first character becomes the node that joins the two trees
+			EditHistory otherHistory = other.history;
+			other.history = null;
+			Node middle = new Node(other.delete(0));
+			other.history = otherHistory;
+			BooleanContainer booleanContainer = new BooleanContainer(true, 0, '\0');
+			this.root = join(this.root, this.fastHeight(), this.size, middle, other.root, other.fastHeight(),
+					other.size, booleanContainer);
+			this.totalRotationCount += booleanContainer.rotationCount;
+			this.size += other.size + 1;
+		}
+		other.root = Node.NULL_NODE;
+		other.size = 0;
+	}
+
+	/**
+	 * Inserts text at pos in O(M + log N) time, where M is the length of text. The
+	 * text is built into a balanced subtree the same way EditTree(String) does and
+	 * then joined in between the two halves of this tree.
+	 * 
+	 * @param pos  position the first character of text ends up at. Valid
+	 *             positions range from 0 to the size of the tree, inclusive.
+	 * @param text characters to insert
+	 * @throws IndexOutOfBoundsException if pos is negative or too large for this
+	 *                                   tree.
+	 */
+	public void insert(int pos, CharSequence text) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > this.size) {
 			throw new IndexOutOfBoundsException();
 		}
-		StringBuilder sb = new StringBuilder();
-		root.get(pos, length, sb);
-		return sb.toString();
+		int length = text.length();
+		if (length <= 1) {
+			if (length == 1) {
+				this.add(text.charAt(0), pos);
+			}
+			return;
+		}
+		if (this.history != null) {
+			this.history.recordInsert(pos, length);
+		}
+		if (!(text instanceof String)) {
+			// copy it so that the tree can be built from several threads, and so
+			// that reading text cannot see this tree half split if text is a view of
+			// it
+			char[] chars = new char[length];
+			for (int i = 0; i < length; i++) {
+				chars[i] = text.charAt(i);
+			}
+			text = CharBuffer.wrap(chars);
+		}
+		this.modCount++;
+		SplitContainer splitContainer = new SplitContainer();
+		split(this.root, this.fastHeight(), this.size, pos, splitContainer);
+		// the first and last characters are the middle nodes of the two joins
+		Node middle = fillTree(text, 1, length - 2);
+		BooleanContainer booleanContainer = new BooleanContainer(true, 0, '\0');
+		Node right = join(middle, heightOfFilledTree(length - 2), length - 2, new Node(text.charAt(length - 1)),
+				splitContainer.right, splitContainer.rightHeight, splitContainer.rightSize, booleanContainer);
+		int rightHeight = booleanContainer.height;
+		this.root = join(splitContainer.left, splitContainer.leftHeight, splitContainer.leftSize,
+				new Node(text.charAt(0)), right, rightHeight, splitContainer.rightSize + length - 1,
+				booleanContainer);
+		this.totalRotationCount += splitContainer.rotationCount + booleanContainer.rotationCount;
+		this.size += length;
+	}
+
+	/**
+	 * Splits this tree in O(log N) time. This tree keeps the characters before pos
+	 * and the characters from pos on are moved into the returned tree.
+	 * 
+	 * @param pos position of the first character of the returned tree. Valid
+	 *            positions range from 0 to the size of the tree, inclusive.
+	 * @return a tree holding the characters from pos to the end
+	 * @throws IndexOutOfBoundsException if pos is negative or too large for this
+	 *                                   tree.
+	 */
+	public EditTree split(int pos) throws IndexOutOfBoundsException {
+		if (pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		SplitContainer splitContainer = new SplitContainer();
+		split(this.root, this.fastHeight(), this.size, pos, splitContainer);
+		EditTree rest = new EditTree();
+		rest.root = splitContainer.right;
+		rest.size = splitContainer.rightSize;
+		rest.summaryKinds = this.summaryKinds;
+		this.root = splitContainer.left;
+		this.size = splitContainer.leftSize;
+		this.totalRotationCount += splitContainer.rotationCount;
+		this.modCount++;
+		if (this.history != null && rest.size > 0) {
+			this.history.recordDelete(pos, new EditTree(rest));
+		}
+		return rest;
+	}
+
+	/**
+	 * Splits the subtree rooted at node into the nodes before pos and the nodes
+	 * from pos on. Each level joins the piece that does not contain pos onto the
+	 * result, and since the joined heights only grow on the way up, the total work
+	 * is O(log N).
+	 * 
+	 * @param node           root of the subtree to split
+	 * @param height         height of the subtree
+	 * @param size           number of nodes in the subtree
+	 * @param pos            in-order position to split at
+	 * @param splitContainer holds the two halves with their heights and sizes
+	 */
+	private void split(Node node, int height, int size, int pos, SplitContainer splitContainer) {
+		if (node == Node.NULL_NODE) {
+			splitContainer.left = splitContainer.right = Node.NULL_NODE;
+			splitContainer.leftHeight = splitContainer.rightHeight = -1;
+			splitContainer.leftSize = splitContainer.rightSize = 0;
+			return;
+		}
+		// the balance code tells us which child is one shorter than the other
+		int leftHeight = node.balance == Node.Code.RIGHT ? height - 2 : height - 1;
+		int rightHeight = node.balance == Node.Code.LEFT ? height - 2 : height - 1;
+		int leftSize = node.rank;
+		int rightSize = size - node.rank - 1;
+		Node left = node.left;
+		Node right = node.right;
+		BooleanContainer booleanContainer = new BooleanContainer(true, 0, '\0');
+		if (pos <= node.rank) {
+			// node and its right subtree belong after the split
+			split(left, leftHeight, leftSize, pos, splitContainer);
+			splitContainer.right = join(splitContainer.right, splitContainer.rightHeight, splitContainer.rightSize,
+					node, right, rightHeight, rightSize, booleanContainer);
+			splitContainer.rightHeight = booleanContainer.height;
+			splitContainer.rightSize += rightSize + 1;
+		} else {
+			// node and its left subtree belong before the split
+			split(right, rightHeight, rightSize, pos - (node.rank + 1), splitContainer);
+			splitContainer.left = join(left, leftHeight, leftSize, node, splitContainer.left,
+					splitContainer.leftHeight, splitContainer.leftSize, booleanContainer);
+			splitContainer.leftHeight = booleanContainer.height;
+			splitContainer.leftSize += leftSize + 1;
+		}
+		splitContainer.rotationCount += booleanContainer.rotationCount;
+	}
+
+	/**
+	 * Builds a height-balanced tree whose in-order traversal is left, then middle,
+	 * then right. It walks down the taller tree's spine to a subtree about as tall
+	 * as the shorter tree, hangs middle there and rebalances on the way back up,
+	 * which is O(|leftHeight - rightHeight| + 1).
+	 * 
+	 * @param booleanContainer gets the height of the new tree and the rotations
+	 *                         done
+	 * @return the root of the joined tree
+	 */
+	private Node join(Node left, int leftHeight, int leftSize, Node middle, Node right, int rightHeight,
+			int rightSize, BooleanContainer booleanContainer) {
+		if (leftHeight > rightHeight + 1) {
+			Node joined = joinRight(left, leftHeight, leftSize, middle, right, rightHeight, booleanContainer);
+			booleanContainer.height = booleanContainer.value ? leftHeight + 1 : leftHeight;
+			return joined;
+		} else if (rightHeight > leftHeight + 1) {
+			Node joined = joinLeft(left, leftSize, middle, right, rightHeight, leftHeight, booleanContainer);
+			booleanContainer.height = booleanContainer.value ? rightHeight + 1 : rightHeight;
+			return joined;
+		}
+		booleanContainer.height = Math.max(leftHeight, rightHeight) + 1;
+		return link(left, leftHeight, leftSize, middle, right, rightHeight);
+	}
+
+	/**
+	 * Joins a shorter right tree onto the right spine of left.
+	 * 
+	 * @param booleanContainer value is set to true if the result is taller than
+	 *                         left was
+	 * @return the root of the joined subtree
+	 */
+	private Node joinRight(Node left, int leftHeight, int leftSize, Node middle, Node right, int rightHeight,
+			BooleanContainer booleanContainer) {
+		if (leftHeight <= rightHeight + 1) {
+			booleanContainer.value = true;
+			return link(left, leftHeight, leftSize, middle, right, rightHeight);
+		}
+		int childHeight = left.balance == Node.Code.LEFT ? leftHeight - 2 : leftHeight - 1;
+		left.right = joinRight(left.right, childHeight, leftSize - (left.rank + 1), middle, right, rightHeight,
+				booleanContainer);
+		left.updateSummaries();
+		// same as adding on the right side, except that the grown child can be
+		// balanced, in which case the rotation leaves this subtree taller
+		if (!booleanContainer.value) {
+			return left;
+		}
+		if (left.balance == Node.Code.LEFT) {
+			left.balance = Node.Code.SAME;
+			booleanContainer.value = false;
+			return left;
+		} else if (left.balance == Node.Code.SAME) {
+			left.balance = Node.Code.RIGHT;
+			return left;
+		} else if (left.right.balance == Node.Code.LEFT) {
+			booleanContainer.value = false;
+			booleanContainer.rotationCount += 2;
+			return left.doubleLeftRotation(left, left.right.left, left.right);
+		} else if (left.right.balance == Node.Code.RIGHT) {
+			booleanContainer.value = false;
+			booleanContainer.rotationCount += 1;
+			return left.singleLeftRotation(left, left.right);
+		} else {
+			booleanContainer.rotationCount += 1;
+			Node temp = left.singleLeftRotation(left, left.right);
+			temp.balance = Node.Code.LEFT;
+			temp.left.balance = Node.Code.RIGHT;
+			return temp;
+		}
+	}
+
+	/**
+	 * Joins a shorter left tree onto the left spine of right. Every node on the
+	 * way down gains left and middle in its left subtree, so its rank grows by
+	 * leftSize + 1.
+	 * 
+	 * @param booleanContainer value is set to true if the result is taller than
+	 *                         right was
+	 * @return the root of the joined subtree
+	 */
+	private Node joinLeft(Node left, int leftSize, Node middle, Node right, int rightHeight, int leftHeight,
+			BooleanContainer booleanContainer) {
+		if (rightHeight <= leftHeight + 1) {
+			booleanContainer.value = true;
+			return link(left, leftHeight, leftSize, middle, right, rightHeight);
+		}
+		int childHeight = right.balance == Node.Code.RIGHT ? rightHeight - 2 : rightHeight - 1;
+		right.left = joinLeft(left, leftSize, middle, right.left, childHeight, leftHeight, booleanContainer);
+		right.rank += leftSize + 1;
+		right.updateSummaries();
+		if (!booleanContainer.value) {
+			return right;
+		}
+		if (right.balance == Node.Code.RIGHT) {
+			right.balance = Node.Code.SAME;
+			booleanContainer.value = false;
+			return right;
+		} else if (right.balance == Node.Code.SAME) {
+			right.balance = Node.Code.LEFT;
+			return right;
+		} else if (right.left.balance == Node.Code.RIGHT) {
+			booleanContainer.value = false;
+			booleanContainer.rotationCount += 2;
+			return right.doubleRightRotation(right, right.left.right, right.left);
+		} else if (right.left.balance == Node.Code.LEFT) {
+			booleanContainer.value = false;
+			booleanContainer.rotationCount += 1;
+			return right.singleRightRotation(right, right.left);
+		} else {
+			booleanContainer.rotationCount += 1;
+			Node temp = right.singleRightRotation(right, right.left);
+			temp.balance = Node.Code.RIGHT;
+			temp.right.balance = Node.Code.LEFT;
+			return temp;
+		}
+	}
+
+	/**
+	 * Makes middle the parent of two trees whose heights differ by at most one.
+	 * 
+	 * @return middle
+	 */
+	private Node link(Node left, int leftHeight, int leftSize, Node middle, Node right, int rightHeight) {
+		middle.left = left;
+		middle.right = right;
+		middle.rank = leftSize;
+		middle.updateSummaries();
+		if (leftHeight == rightHeight) {
+			middle.balance = Node.Code.SAME;
+		} else if (leftHeight > rightHeight) {
+			middle.balance = Node.Code.LEFT;
+		} else {
+			middle.balance = Node.Code.RIGHT;
+		}
+		return middle;
 	}
 
 	// Feel free to add whatever other methods and helpers you need,
@@ -373,6 +1925,8 @@ public class EditTree {
 	 * first time it is called.
 	 */
 	public void show() {
+		// the wrappers are only made for trees that are actually displayed
+		root.createDisplayableNodeWrappers();
 		if (this.display == null) {
 			this.display = new DisplayableBinaryTree(this, 960, 1080, true);
 		} else {
@@ -400,6 +1954,7 @@ public class EditTree {
 		boolean value;
 		int rotationCount;
 		char data;
+		int height;
 
 		public BooleanContainer(boolean value, int rotationCount, char data) {
 			this.value = value;
@@ -409,4 +1964,121 @@ public class EditTree {
 		}
 	}
 
+	/**
+	 * Data holding container class for the two halves of a split, along with
+	 * their heights and sizes so that they can be joined without recomputing them
+	 */
+	public class SplitContainer {
+
+		Node left, right;
+		int leftHeight, rightHeight;
+		int leftSize, rightSize;
+		int rotationCount;
+	}
+
+	/**
+	 * Copies a range of a tree into an array, halving the range until the pieces
+	 * are small enough to copy with one walk down the tree.
+	 */
+	private static class CopyTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final Node root;
+		private final int pos, length;
+		private final char[] dst;
+		private final int offset;
+
+		public CopyTask(Node root, int pos, int length, char[] dst, int offset) {
+			this.root = root;
+			this.pos = pos;
+			this.length = length;
+			this.dst = dst;
+			this.offset = offset;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.length <= PARALLEL_COPY_THRESHOLD) {
+				this.root.getChars(this.pos, this.length, this.dst, this.offset);
+				return;
+			}
+			int half = this.length / 2;
+			invokeAll(new CopyTask(this.root, this.pos, half, this.dst, this.offset),
+					new CopyTask(this.root, this.pos + half, this.length - half, this.dst, this.offset + half));
+		}
+	}
+
+	/**
+	 * Reads a snapshot through a buffer that is refilled from the channel as it
+	 * runs out.
+	 */
+	private static class SnapshotReader {
+
+		private final ReadableByteChannel channel;
+		final ByteBuffer bytes = ByteBuffer.allocateDirect(SNAPSHOT_BUFFER_BYTES);
+
+		public SnapshotReader(ReadableByteChannel channel) {
+			this.channel = channel;
+			this.bytes.flip();
+		}
+
+		/**
+		 * ensures at least count bytes can be read from the buffer
+		 * 
+		 * @throws EOFException if the channel ends first
+		 */
+		public void require(int count) throws IOException {
+			if (this.bytes.remaining() >= count) {
+				return;
+			}
+			this.bytes.compact();
+			while (this.bytes.position() < count) {
+				if (this.channel.read(this.bytes) < 0) {
+					throw new EOFException("snapshot ended early");
+				}
+			}
+			this.bytes.flip();
+		}
+	}
+
+	/**
+	 * Walks a tree in-order with an explicit stack of the nodes whose left
+	 * subtrees are being visited, handing out the characters in chunks.
+	 */
+	private static class ChunkWalker {
+
+		private final Node[] stack = new Node[Node.MAX_HEIGHT];
+		private int depth;
+
+		public ChunkWalker(Node root) {
+			this.pushLeftSpine(root);
+		}
+
+		private void pushLeftSpine(Node node) {
+			while (node != Node.NULL_NODE) {
+				this.stack[this.depth++] = node;
+				node = node.left;
+			}
+		}
+
+		public boolean hasNext() {
+			return this.depth > 0;
+		}
+
+		/**
+		 * copies up to length of the next characters into dst
+		 * 
+		 * @return the number of characters copied
+		 */
+		public int read(char[] dst, int offset, int length) {
+			int count = 0;
+			while (count < length && this.depth > 0) {
+				Node node = this.stack[--this.depth];
+				dst[offset + count++] = node.data;
+				this.pushLeftSpine(node.right);
+			}
+			return count;
+		}
+	}
+
 }
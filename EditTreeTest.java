@@ -0,0 +1,393 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for EditTree's whole-range operations, their range arguments and the
+ * edit history.
+ *
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+public class EditTreeTest {
+
+	/**
+	 * Checks t's text and every invariant the joins have to keep: ranks, balance
+	 * codes, heights, sizes and the newline counts behind lineOfOffset.
+	 */
+	private static void checkTree(String expected, EditTree t) {
+		assertEquals(expected, t.toString());
+		assertEquals(expected.length(), t.size());
+		assertEquals(expected.length(), t.slowSize());
+		assertTrue(t.ranksMatchLeftSubtreeSize());
+		assertTrue(t.balanceCodesAreCorrect());
+		assertEquals(t.slowHeight(), t.fastHeight());
+		int newlines = 0;
+		for (int pos = 0; pos <= expected.length(); pos++) {
+			assertEquals(newlines, t.lineOfOffset(pos));
+			if (pos < expected.length() && expected.charAt(pos) == '\n') {
+				newlines++;
+			}
+		}
+		assertEquals(newlines + 1, t.lineCount());
+	}
+
+	private static String randomText(Random random, int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = random.nextInt(8) == 0 ? '\n' : (char) ('a' + random.nextInt(26));
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Builds a tree of the given text by adding one character at a time, so its
+	 * shape differs from the one EditTree(String) builds.
+	 */
+	private static EditTree addedTree(String s) {
+		EditTree t = new EditTree();
+		for (int i = 0; i < s.length(); i++) {
+			t.add(s.charAt(i));
+		}
+		return t;
+	}
+
+	@Test
+	public void testRandomSplitAndConcatenate() {
+		Random random = new Random(2);
+		for (int round = 0; round < 200; round++) {
+			String s = randomText(random, random.nextInt(300));
+			EditTree t = random.nextBoolean() ? new EditTree(s) : addedTree(s);
+			int pos = random.nextInt(s.length() + 1);
+			EditTree rest = t.split(pos);
+			checkTree(s.substring(0, pos), t);
+			checkTree(s.substring(pos), rest);
+			// put the halves back together, joining trees of very different heights
+			t.concatenate(rest);
+			checkTree(s, t);
+			checkTree("", rest);
+			// join onto a tree of another shape and size, on either side
+			String other = randomText(random, random.nextInt(1000));
+			EditTree before = addedTree(other);
+			before.concatenate(t);
+			checkTree(other + s, before);
+			EditTree after = new EditTree(other);
+			before.concatenate(after);
+			checkTree(other + s + other, before);
+		}
+	}
+
+	@Test
+	public void testRepeatedSplitsAndConcatenates() {
+		Random random = new Random(3);
+		String s = randomText(random, 2000);
+		EditTree t = new EditTree(s);
+		for (int round = 0; round < 300; round++) {
+			// cut a piece out and paste it somewhere else
+			int from = random.nextInt(s.length() + 1);
+			int to = from + random.nextInt(s.length() - from + 1);
+			EditTree tail = t.split(to);
+			EditTree piece = t.split(from);
+			t.concatenate(tail);
+			s = s.substring(0, from) + s.substring(to);
+			int at = random.nextInt(s.length() + 1);
+			EditTree end = t.split(at);
+			String pieceText = piece.toString();
+			t.concatenate(piece);
+			t.concatenate(end);
+			s = s.substring(0, at) + pieceText + s.substring(at);
+			if (round % 10 == 0) {
+				checkTree(s, t);
+			}
+		}
+		checkTree(s, t);
+	}
+
+	@Test
+	public void testSplitAtEnds() {
+		EditTree t = new EditTree("abcdefghij");
+		EditTree all = t.split(0);
+		checkTree("", t);
+		checkTree("abcdefghij", all);
+		EditTree none = all.split(10);
+		checkTree("abcdefghij", all);
+		checkTree("", none);
+		none.concatenate(all);
+		checkTree("abcdefghij", none);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConcatenateWithItself() {
+		EditTree t = new EditTree("abc");
+		t.concatenate(t);
+	}
+
+	@Test
+	public void testInsertAtEnds() {
+		EditTree t = new EditTree("defg");
+		t.insert(0, "abc");
+		checkTree("abcdefg", t);
+		t.insert(t.size(), "hij");
+		checkTree("abcdefghij", t);
+		t.insert(5, new StringBuilder("XY"));
+		checkTree("abcdeXYfghij", t);
+	}
+
+	@Test
+	public void testInsertShortText() {
+		EditTree t = new EditTree("abc");
+		t.insert(1, "");
+		checkTree("abc", t);
+		t.insert(1, "X");
+		checkTree("aXbc", t);
+		EditTree empty = new EditTree();
+		empty.insert(0, "");
+		checkTree("", empty);
+	}
+
+	@Test
+	public void testInsertIntoEmptyTree() {
+		EditTree t = new EditTree();
+		t.insert(0, "hello\nworld");
+		checkTree("hello\nworld", t);
+	}
+
+	@Test
+	public void testInsertOwnView() {
+		EditTree t = new EditTree("abcdef");
+		t.insert(3, t.asCharSequence());
+		checkTree("abcabcdefdef", t);
+		t.insert(0, t.asCharSequence());
+		checkTree("abcabcdefdefabcabcdefdef", t);
+		t.insert(t.size(), t.asCharSequence().subSequence(0, 3));
+		checkTree("abcabcdefdefabcabcdefdefabc", t);
+	}
+
+	@Test
+	public void testRandomInserts() {
+		Random random = new Random(4);
+		String s = "";
+		EditTree t = new EditTree();
+		for (int round = 0; round < 300; round++) {
+			String text = randomText(random, random.nextInt(round < 150 ? 40 : 3));
+			int pos = random.nextInt(s.length() + 1);
+			t.insert(pos, text);
+			s = s.substring(0, pos) + text + s.substring(pos);
+			if (round % 10 == 0) {
+				checkTree(s, t);
+			}
+		}
+		checkTree(s, t);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testInsertPastEnd() {
+		new EditTree("abc").insert(4, "xy");
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testInsertAtNegativePosition() {
+		new EditTree("abc").insert(-1, "xy");
+	}
+
+	@Test
+	public void testDeleteRangeAtEnds() {
+		EditTree t = new EditTree("abcdefghij");
+		EditTree deleted = t.delete(0, 3);
+		checkTree("defghij", t);
+		checkTree("abc", deleted);
+		deleted = t.delete(t.size() - 2, 2);
+		checkTree("defgh", t);
+		checkTree("ij", deleted);
+		deleted = t.delete(t.size(), 0);
+		checkTree("defgh", t);
+		checkTree("", deleted);
+		deleted = t.delete(2, 0);
+		checkTree("defgh", t);
+		checkTree("", deleted);
+	}
+
+	@Test
+	public void testDeleteWholeTree() {
+		EditTree t = new EditTree("abc\ndef");
+		EditTree deleted = t.delete(0, t.size());
+		checkTree("", t);
+		checkTree("abc\ndef", deleted);
+		checkTree("", t.delete(0, 0));
+	}
+
+	@Test
+	public void testRandomRangeDeletes() {
+		Random random = new Random(5);
+		String s = randomText(random, 3000);
+		EditTree t = addedTree(s);
+		while (s.length() > 0) {
+			int pos = random.nextInt(s.length() + 1);
+			int length = random.nextInt(Math.min(100, s.length() - pos) + 1);
+			checkTree(s.substring(pos, pos + length), t.delete(pos, length));
+			s = s.substring(0, pos) + s.substring(pos + length);
+			checkTree(s, t);
+		}
+	}
+
+	@Test
+	public void testGetRangeAtEnds() {
+		String s = "abcdefghij";
+		EditTree t = new EditTree(s);
+		assertEquals("abc", t.get(0, 3));
+		assertEquals("hij", t.get(7, 3));
+		assertEquals(s, t.get(0, 10));
+		assertEquals("", t.get(10, 0));
+		assertEquals("", t.get(0, 0));
+		assertEquals("", new EditTree().get(0, 0));
+		for (int pos = 0; pos <= s.length(); pos++) {
+			for (int length = 0; pos + length <= s.length(); length++) {
+				assertEquals(s.substring(pos, pos + length), t.get(pos, length));
+			}
+		}
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testDeleteRangeNegativeLength() {
+		new EditTree("abcdefghij").delete(3, -1);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGetRangePastEnd() {
+		new EditTree("abcdefghij").get(10, 1);
+	}
+
+	private static byte[] snapshot(EditTree t) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		t.writeSnapshot(Channels.newChannel(out));
+		return out.toByteArray();
+	}
+
+	private static EditTree readSnapshot(byte[] bytes) throws IOException {
+		return EditTree.readSnapshot(Channels.newChannel(new ByteArrayInputStream(bytes)));
+	}
+
+	@Test
+	public void testSnapshotRoundTrip() throws IOException {
+		Random random = new Random(6);
+		for (int round = 0; round < 50; round++) {
+			String s = randomText(random, random.nextInt(round < 45 ? 200 : 100000));
+			EditTree t = random.nextBoolean() ? new EditTree(s) : addedTree(s);
+			EditTree read = readSnapshot(snapshot(t));
+			checkTree(s, read);
+			assertEquals(t.toDebugString(), read.toDebugString());
+		}
+	}
+
+	@Test
+	public void testSnapshotOfEmptyTree() throws IOException {
+		EditTree read = readSnapshot(snapshot(new EditTree()));
+		checkTree("", read);
+		read.add('a');
+		checkTree("a", read);
+	}
+
+	@Test(expected = IOException.class)
+	public void testSnapshotWithBadMagicNumber() throws IOException {
+		byte[] bytes = snapshot(new EditTree("abc"));
+		bytes[0] ^= 1;
+		readSnapshot(bytes);
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedSnapshot() throws IOException {
+		byte[] bytes = snapshot(new EditTree("abcdefghij"));
+		readSnapshot(Arrays.copyOf(bytes, bytes.length - 1));
+	}
+
+	@Test
+	public void testSnapshotWithBadBalanceCode() throws IOException {
+		// the root of "abc" is b, balanced with a on its left and c on its right
+		byte[] bytes = snapshot(new EditTree("abc"));
+		ByteBuffer root = ByteBuffer.wrap(bytes, 14, 4);
+		assertEquals(1 << 2, root.getInt(14));
+		for (int code = 1; code <= 2; code++) {
+			root.putInt(14, 1 << 2 | code);
+			try {
+				readSnapshot(bytes);
+				fail();
+			} catch (IOException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testSnapshotWithUnbalancedShape() throws IOException {
+		// a chain of three nodes to the right, each claiming to lean right
+		ByteBuffer bytes = ByteBuffer.allocate(12 + 3 * 6);
+		bytes.put(snapshot(new EditTree()), 0, 8).putInt(3);
+		for (char ch = 'a'; ch <= 'c'; ch++) {
+			bytes.putChar(ch).putInt(ch == 'c' ? 0 : 2);
+		}
+		readSnapshot(bytes.array());
+	}
+
+	@Test
+	public void testDeleteRangeTooLongLeavesTreeAlone() {
+		EditTree t = new EditTree("abcdefghij");
+		try {
+			t.delete(3, Integer.MAX_VALUE);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		assertEquals("abcdefghij", t.toString());
+		assertEquals("defghij", t.delete(3, 7).toString());
+		assertEquals("abc", t.toString());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGetRangeTooLong() {
+		new EditTree("abcdefghij").get(3, Integer.MAX_VALUE);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGetCharsRangeTooLong() {
+		new EditTree("abcdefghij").getChars(3, Integer.MAX_VALUE, new char[10], 0);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGetCharsOffsetTooLarge() {
+		new EditTree("abcdefghij").getChars(0, 2, new char[10], Integer.MAX_VALUE);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testHashRangeTooLong() {
+		new EditTree("abcdefghij").hash(3, Integer.MAX_VALUE);
+	}
+
+	@Test
+	public void testEmptyRangeDeleteLeavesHistoryAlone() {
+		EditTree t = new EditTree();
+		t.recordHistory(true);
+		t.add('a');
+		t.history().closeRun();
+		t.add('b');
+		t.history().undo();
+		assertEquals(1, t.history().undoCount());
+		assertEquals(1, t.history().redoCount());
+		t.delete(1, 0);
+		assertEquals(1, t.history().undoCount());
+		assertEquals(1, t.history().redoCount());
+		t.history().redo();
+		assertEquals("ab", t.toString());
+	}
+}
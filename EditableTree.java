@@ -0,0 +1,73 @@
+package editortrees;
+
+/**
+ * The operations every tree of characters in this package supports, so that
+ * code can be written once against this interface and switch between
+ * EditTree, ChunkedEditTree, the IndexedEditTree backends, PersistentEditTree
+ * and ConcurrentEditTree by changing only where the tree is made.
+ *
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+public interface EditableTree {
+
+	/**
+	 * @param ch character to add to the end of this tree.
+	 */
+	void add(char ch);
+
+	/**
+	 * @param ch    character to add
+	 * @param index character added in this in-order position. Valid positions
+	 *              range from 0 to the size of the tree, inclusive.
+	 * @throws IndexOutOfBoundsException if index is negative or too large for
+	 *                                   this tree.
+	 */
+	void add(char ch, int index) throws IndexOutOfBoundsException;
+
+	/**
+	 * @param pos position of character to delete from this tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException if pos is negative or not less than the
+	 *                                   size of the tree.
+	 */
+	char delete(int pos) throws IndexOutOfBoundsException;
+
+	/**
+	 * @param pos position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException if pos is negative or not less than the
+	 *                                   size of the tree.
+	 */
+	char get(int pos) throws IndexOutOfBoundsException;
+
+	/**
+	 * @param pos    location of the beginning of the string to retrieve
+	 * @param length length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
+	 *                                   legitimate indexes within this tree.
+	 */
+	String get(int pos, int length) throws IndexOutOfBoundsException;
+
+	/**
+	 * @return the number of characters in this tree
+	 */
+	int size();
+
+	/**
+	 * @return the height of this tree, found in O(log N) time
+	 */
+	int fastHeight();
+
+	/**
+	 * @return number of rotations done in this tree since it was created
+	 */
+	int totalRotationCount();
+
+	/**
+	 * @return the characters of this tree, in order
+	 */
+	@Override
+	String toString();
+}
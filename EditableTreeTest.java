@@ -0,0 +1,95 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Runs the same edits on every EditableTree backend and checks that they agree.
+ * The backends that keep one character per AVL node must also agree with
+ * EditTree on shape and rotations.
+ *
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+public class EditableTreeTest {
+
+	private static EditableTree[] avlBackends(String s) {
+		return new EditableTree[] { new EditTree(s), new ArrayEditTree(s), new OffHeapEditTree(s),
+				new PersistentEditTree(s), new ConcurrentEditTree(s) };
+	}
+
+	private static void randomEdits(long seed, String start, EditableTree[] trees, boolean sameShape) {
+		Random random = new Random(seed);
+		StringBuilder expected = new StringBuilder(start);
+		for (int step = 0; step < 3000; step++) {
+			// grow for a while, then shrink, so that deletes rebalance a deep tree
+			boolean add = expected.length() == 0 || random.nextInt(10) < (step < 2000 ? 7 : 3);
+			if (add) {
+				char ch = (char) ('a' + random.nextInt(26));
+				int pos = random.nextInt(expected.length() + 1);
+				expected.insert(pos, ch);
+				for (EditableTree t : trees) {
+					if (pos == t.size()) {
+						t.add(ch);
+					} else {
+						t.add(ch, pos);
+					}
+				}
+			} else {
+				int pos = random.nextInt(expected.length());
+				char ch = expected.charAt(pos);
+				expected.deleteCharAt(pos);
+				for (EditableTree t : trees) {
+					assertEquals(ch, t.delete(pos));
+				}
+			}
+			if (step % 100 == 0 || step == 2999) {
+				check(expected.toString(), trees, sameShape);
+			}
+		}
+	}
+
+	private static void check(String expected, EditableTree[] trees, boolean sameShape) {
+		EditableTree first = trees[0];
+		for (EditableTree t : trees) {
+			assertEquals(expected, t.toString());
+			assertEquals(expected.length(), t.size());
+			if (expected.length() > 0) {
+				int pos = expected.length() / 3;
+				assertEquals(expected.charAt(pos), t.get(pos));
+				assertEquals(expected.substring(pos, expected.length() - pos), t.get(pos, expected.length() - 2 * pos));
+			}
+			if (sameShape) {
+				assertEquals(first.fastHeight(), t.fastHeight());
+				assertEquals(first.totalRotationCount(), t.totalRotationCount());
+			}
+		}
+	}
+
+	@Test
+	public void testAvlBackendsMatchFromEmpty() {
+		for (long seed = 0; seed < 5; seed++) {
+			randomEdits(seed, "", avlBackends(""), true);
+		}
+	}
+
+	@Test
+	public void testAvlBackendsMatchFromString() {
+		String s = "the quick brown fox jumps over the lazy dog";
+		EditableTree[] trees = avlBackends(s);
+		check(s, trees, true);
+		randomEdits(42, s, trees, true);
+	}
+
+	@Test
+	public void testChunkedTreeMatchesText() {
+		for (long seed = 0; seed < 5; seed++) {
+			// a small chunk capacity makes chunks split and merge often
+			EditableTree[] trees = { new EditTree(), new ChunkedEditTree(4), new ChunkedEditTree() };
+			randomEdits(seed, "", trees, false);
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package editortrees;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A polynomial hash of a run of characters, kept for each subtree of an
+ * EditTree so that any range can be hashed, and two trees compared, in O(log N)
+ * time. The hash of c1 c2 ... cn is c1*B^(n-1) + ... + cn modulo the prime
+ * 2^61-1, so two runs with the same text have the same hash however their trees
+ * are shaped, and two different runs of length n collide with probability less
+ * than n/2^61. The base B is chosen at random when the class is loaded, so no
+ * input can be made to collide on purpose, but hashes from different runs of
+ * the program cannot be compared.
+ * 
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+final class Fingerprint {
+
+	private static final long MODULUS = (1L << 61) - 1;
+	private static final long BASE = ThreadLocalRandom.current().nextLong(1 << 16, MODULUS);
+	private static final Fingerprint EMPTY = new Fingerprint(0, 1);
+
+	static final Summary<Fingerprint> KIND = new Summary<Fingerprint>() {
+		@Override
+		public Fingerprint identity() {
+			return EMPTY;
+		}
+
+		@Override
+		public Fingerprint of(char ch) {
+			return new Fingerprint(ch, BASE);
+		}
+
+		@Override
+		public Fingerprint combine(Fingerprint before, Fingerprint after) {
+			if (before == EMPTY) {
+				return after;
+			} else if (after == EMPTY) {
+				return before;
+			}
+			// shift before's characters past after's, then add after's in
+			return new Fingerprint(reduce(multiply(before.hash, after.power) + after.hash),
+					multiply(before.power, after.power));
+		}
+	};
+
+	final long hash;
+	// BASE to the number of characters in the run
+	final long power;
+
+	private Fingerprint(long hash, long power) {
+		this.hash = hash;
+		this.power = power;
+	}
+
+	/**
+	 * @return a*b modulo 2^61-1, for a and b less than 2^61-1
+	 */
+	private static long multiply(long a, long b) {
+		long high = Math.multiplyHigh(a, b);
+		long low = a * b;
+		// 2^61 is 1 modulo 2^61-1, so the bits above the 61st fold back down
+		return reduce((low & MODULUS) + (low >>> 61) + (high << 3));
+	}
+
+	/**
+	 * @return x modulo 2^61-1, for x less than 2^63
+	 */
+	private static long reduce(long x) {
+		x = (x & MODULUS) + (x >>> 61);
+		return x >= MODULUS ? x - MODULUS : x;
+	}
+}
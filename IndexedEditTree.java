@@ -0,0 +1,592 @@
+package editortrees;
+
+import java.util.ArrayList;
+
+/**
+ * The height-balanced tree with rank algorithms of EditTree, written against
+ * node ids instead of Node objects so that the nodes can live in flat storage.
+ * Subclasses decide where the data, children, rank and balance code of each id
+ * are kept. Id 0 plays the part of the NULL_NODE, and deleted ids are kept on a
+ * free list (linked through their left child) for the next add to reuse.
+ *
+ * It has the same public methods as EditTree, and given the same calls it builds
+ * the same shape, ranks, balance codes and rotation counts.
+ *
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+public abstract class IndexedEditTree implements EditableTree {
+
+	// balance codes, in the same order as Node.Code
+	static final byte SAME = 0, LEFT = 1, RIGHT = 2;
+	// id of the null node
+	static final int NULL = 0;
+
+	int root;
+	private int size;
+	private int totalRotationCount;
+	// next id that has never been used, and the first id of the free list
+	private int nextUnused;
+	private int freeList;
+	// path from the root taken by the current add or delete
+	private final int[] path = new int[Node.MAX_HEIGHT];
+	private final boolean[] wentLeft = new boolean[Node.MAX_HEIGHT];
+
+	/**
+	 * Construct an empty tree
+	 */
+	protected IndexedEditTree() {
+		this.root = NULL;
+		this.nextUnused = 1;
+		this.freeList = NULL;
+	}
+
+	abstract char data(int node);
+
+	abstract void setData(int node, char ch);
+
+	abstract int left(int node);
+
+	abstract void setLeft(int node, int left);
+
+	abstract int right(int node);
+
+	abstract void setRight(int node, int right);
+
+	abstract int rank(int node);
+
+	abstract void setRank(int node, int rank);
+
+	abstract byte balance(int node);
+
+	abstract void setBalance(int node, byte balance);
+
+	/**
+	 * @return the number of ids the storage has room for, including the null node
+	 */
+	abstract int capacity();
+
+	/**
+	 * ensures the storage has room for more ids
+	 *
+	 * @throws IllegalStateException if the storage cannot grow any further
+	 */
+	abstract void grow();
+
+	/**
+	 * Makes this empty tree's toString be s in O(N) time, with the same shape as
+	 * EditTree(String) builds
+	 *
+	 * @param s
+	 */
+	protected void fill(String s) {
+		this.root = fillTree(s, 0, s.length() - 1);
+		this.size = s.length();
+	}
+
+	/**
+	 * Constructs a tree that would display the characters lower..upper of s in an
+	 * in-order transversal
+	 *
+	 * @return id of the root
+	 */
+	private int fillTree(String s, int lower, int upper) {
+		if (upper < lower) {
+			return NULL;
+		}
+		int mid = (lower + upper) / 2;
+		int node = this.allocate(s.charAt(mid));
+		this.setRank(node, mid - lower);
+		this.setBalance(node, heightOfFilledTree(mid - lower) == heightOfFilledTree(upper - mid) ? SAME : RIGHT);
+		this.setLeft(node, fillTree(s, lower, mid - 1));
+		this.setRight(node, fillTree(s, mid + 1, upper));
+		return node;
+	}
+
+	/**
+	 * @param count number of nodes in the subtree
+	 * @return the height of the subtree fillTree builds from count nodes
+	 */
+	private static int heightOfFilledTree(int count) {
+		return 31 - Integer.numberOfLeadingZeros(count);
+	}
+
+	/**
+	 * ensures a new leaf node holding ch is stored, reusing a free id if there is
+	 * one and growing the storage otherwise
+	 *
+	 * @param ch
+	 * @return id of the new node
+	 */
+	private int allocate(char ch) {
+		int node;
+		if (this.freeList != NULL) {
+			node = this.freeList;
+			this.freeList = this.left(node);
+		} else {
+			if (this.nextUnused == this.capacity()) {
+				this.grow();
+			}
+			node = this.nextUnused++;
+		}
+		this.setData(node, ch);
+		this.setLeft(node, NULL);
+		this.setRight(node, NULL);
+		this.setRank(node, 0);
+		this.setBalance(node, SAME);
+		return node;
+	}
+
+	/**
+	 * puts a deleted node's id on the free list
+	 *
+	 * @param node
+	 */
+	private void free(int node) {
+		this.setLeft(node, this.freeList);
+		this.freeList = node;
+	}
+
+	/**
+	 * return the string produced by an in-order traversal of this tree
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(this.size);
+		this.toString(this.root, sb);
+		return sb.toString();
+	}
+
+	private void toString(int node, StringBuilder sb) {
+		if (node != NULL) {
+			this.toString(this.left(node), sb);
+			sb.append(this.data(node));
+			this.toString(this.right(node), sb);
+		}
+	}
+
+	/**
+	 * @return the number of nodes in this tree, not counting the null node
+	 */
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @param ch character to add to the end of this tree.
+	 */
+	@Override
+	public void add(char ch) {
+		this.add(ch, this.size);
+	}
+
+	/**
+	 * @param ch    character to add
+	 * @param index character added in this in-order position. Valid positions
+	 *              range from 0 to the size of the tree, inclusive.
+	 * @throws IndexOutOfBoundsException if index is negative or too large for
+	 *                                   this tree.
+	 */
+	@Override
+	public void add(char ch, int index) throws IndexOutOfBoundsException {
+		if (this.size < index || index < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		int node = this.allocate(ch);
+		int depth = 0;
+		int current = this.root;
+		while (current != NULL) {
+			this.path[depth] = current;
+			if (index > this.rank(current)) {
+				index -= this.rank(current) + 1;
+				this.wentLeft[depth] = false;
+				current = this.right(current);
+			} else {
+				this.setRank(current, this.rank(current) + 1);
+				this.wentLeft[depth] = true;
+				current = this.left(current);
+			}
+			depth++;
+		}
+		this.replaceChild(depth, node);
+		this.rebalanceAfterAdd(depth);
+		this.size++;
+	}
+
+	/**
+	 * Walks back up the recorded path after a node was added, until a balance code
+	 * tips to SAME or a rotation restores the old height.
+	 *
+	 * @param depth number of nodes on the recorded path
+	 */
+	private void rebalanceAfterAdd(int depth) {
+		for (int level = depth - 1; level >= 0; level--) {
+			int node = this.path[level];
+			if (this.wentLeft[level]) {
+				if (this.balance(node) == SAME) {
+					this.setBalance(node, LEFT);
+					continue;
+				} else if (this.balance(node) == RIGHT) {
+					this.setBalance(node, SAME);
+				} else if (this.balance(this.left(node)) == RIGHT) {
+					this.totalRotationCount += 2;
+					this.replaceChild(level, this.doubleRightRotation(node, this.right(this.left(node)), this.left(node)));
+				} else {
+					this.totalRotationCount += 1;
+					this.replaceChild(level, this.singleRightRotation(node, this.left(node)));
+				}
+			} else {
+				if (this.balance(node) == SAME) {
+					this.setBalance(node, RIGHT);
+					continue;
+				} else if (this.balance(node) == LEFT) {
+					this.setBalance(node, SAME);
+				} else if (this.balance(this.right(node)) == LEFT) {
+					this.totalRotationCount += 2;
+					this.replaceChild(level, this.doubleLeftRotation(node, this.left(this.right(node)), this.right(node)));
+				} else {
+					this.totalRotationCount += 1;
+					this.replaceChild(level, this.singleLeftRotation(node, this.right(node)));
+				}
+			}
+			return;
+		}
+	}
+
+	/**
+	 * @param pos position of character to delete from this tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	@Override
+	public char delete(int pos) throws IndexOutOfBoundsException {
+		if (pos >= this.size || pos < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		int depth = 0;
+		int current = this.root;
+		int index = pos;
+		while (index != this.rank(current)) {
+			this.path[depth] = current;
+			if (index > this.rank(current)) {
+				index -= this.rank(current) + 1;
+				this.wentLeft[depth] = false;
+				current = this.right(current);
+			} else {
+				this.setRank(current, this.rank(current) - 1);
+				this.wentLeft[depth] = true;
+				current = this.left(current);
+			}
+			depth++;
+		}
+		this.path[depth] = current;
+		char deleted = this.data(current);
+		if (this.left(current) != NULL && this.right(current) != NULL) {
+			// replace the data with the in-order successor's and remove that instead
+			int target = current;
+			this.wentLeft[depth] = false;
+			depth++;
+			current = this.right(current);
+			while (this.left(current) != NULL) {
+				this.path[depth] = current;
+				this.setRank(current, this.rank(current) - 1);
+				this.wentLeft[depth] = true;
+				depth++;
+				current = this.left(current);
+			}
+			this.setData(target, this.data(current));
+		}
+		this.replaceChild(depth, this.left(current) == NULL ? this.right(current) : this.left(current));
+		this.free(current);
+		this.rebalanceAfterDelete(depth);
+		this.size--;
+		return deleted;
+	}
+
+	/**
+	 * Walks back up the recorded path after a node was removed, until a balance
+	 * code tips away from SAME or a rotation keeps the old height.
+	 *
+	 * @param depth number of nodes on the recorded path
+	 */
+	private void rebalanceAfterDelete(int depth) {
+		for (int level = depth - 1; level >= 0; level--) {
+			int node = this.path[level];
+			int temp;
+			if (this.wentLeft[level]) {
+				if (this.balance(node) == LEFT) {
+					this.setBalance(node, SAME);
+					continue;
+				} else if (this.balance(node) == SAME) {
+					this.setBalance(node, RIGHT);
+					return;
+				} else if (this.balance(this.right(node)) == RIGHT) {
+					this.totalRotationCount += 1;
+					temp = this.singleLeftRotation(node, this.right(node));
+				} else if (this.balance(this.right(node)) == SAME) {
+					this.totalRotationCount += 1;
+					temp = this.singleLeftRotation(node, this.right(node));
+					this.setBalance(temp, LEFT);
+					this.setBalance(this.left(temp), RIGHT);
+					this.replaceChild(level, temp);
+					return;
+				} else {
+					this.totalRotationCount += 2;
+					temp = this.doubleLeftRotation(node, this.left(this.right(node)), this.right(node));
+				}
+			} else {
+				if (this.balance(node) == RIGHT) {
+					this.setBalance(node, SAME);
+					continue;
+				} else if (this.balance(node) == SAME) {
+					this.setBalance(node, LEFT);
+					return;
+				} else if (this.balance(this.left(node)) == LEFT) {
+					this.totalRotationCount += 1;
+					temp = this.singleRightRotation(node, this.left(node));
+				} else if (this.balance(this.left(node)) == SAME) {
+					this.totalRotationCount += 1;
+					temp = this.singleRightRotation(node, this.left(node));
+					this.setBalance(temp, RIGHT);
+					this.setBalance(this.right(temp), LEFT);
+					this.replaceChild(level, temp);
+					return;
+				} else {
+					this.totalRotationCount += 2;
+					temp = this.doubleRightRotation(node, this.right(this.left(node)), this.left(node));
+				}
+			}
+			this.replaceChild(level, temp);
+		}
+	}
+
+	/**
+	 * Hangs subtree where path[level] was: under path[level-1] on the side the
+	 * path went, or as the root when level is 0.
+	 */
+	private void replaceChild(int level, int subtree) {
+		if (level == 0) {
+			this.root = subtree;
+		} else if (this.wentLeft[level - 1]) {
+			this.setLeft(this.path[level - 1], subtree);
+		} else {
+			this.setRight(this.path[level - 1], subtree);
+		}
+	}
+
+	/**
+	 * single left rotation of parent A and right child B
+	 *
+	 * @return B, the new subtree root
+	 */
+	private int singleLeftRotation(int A, int B) {
+		this.setRight(A, this.left(B));
+		this.setLeft(B, A);
+		this.setBalance(A, SAME);
+		this.setBalance(B, SAME);
+		this.setRank(B, this.rank(B) + this.rank(A) + 1);
+		return B;
+	}
+
+	/**
+	 * single right rotation of parent A and left child B
+	 *
+	 * @return B, the new subtree root
+	 */
+	private int singleRightRotation(int A, int B) {
+		this.setLeft(A, this.right(B));
+		this.setRight(B, A);
+		this.setBalance(A, SAME);
+		this.setBalance(B, SAME);
+		this.setRank(A, this.rank(A) - (this.rank(B) + 1));
+		return B;
+	}
+
+	/**
+	 * double left rotation of parent A, grandchild B and right child C
+	 *
+	 * @return B, the new subtree root
+	 */
+	private int doubleLeftRotation(int A, int B, int C) {
+		this.setRight(A, this.left(B));
+		this.setLeft(C, this.right(B));
+		this.setLeft(B, A);
+		this.setRight(B, C);
+		this.setRank(C, this.rank(C) - (this.rank(B) + 1));
+		this.setRank(B, this.rank(B) + this.rank(A) + 1);
+		this.balanceAfterDoubleRotation(A, B, C);
+		return B;
+	}
+
+	/**
+	 * double right rotation of parent C, grandchild B and left child A
+	 *
+	 * @return B, the new subtree root
+	 */
+	private int doubleRightRotation(int C, int B, int A) {
+		this.setRight(A, this.left(B));
+		this.setLeft(C, this.right(B));
+		this.setLeft(B, A);
+		this.setRight(B, C);
+		this.setRank(B, this.rank(B) + this.rank(A) + 1);
+		this.setRank(C, this.rank(C) - (this.rank(B) + 1));
+		this.balanceAfterDoubleRotation(A, B, C);
+		return B;
+	}
+
+	/**
+	 * sets the balance codes of a double rotation from B's old balance code, where
+	 * A ends up as B's left child and C as B's right child
+	 */
+	private void balanceAfterDoubleRotation(int A, int B, int C) {
+		if (this.balance(B) == LEFT) {
+			this.setBalance(A, SAME);
+			this.setBalance(C, RIGHT);
+		} else if (this.balance(B) == RIGHT) {
+			this.setBalance(A, LEFT);
+			this.setBalance(C, SAME);
+		} else {
+			this.setBalance(A, SAME);
+			this.setBalance(C, SAME);
+		}
+		this.setBalance(B, SAME);
+	}
+
+	/**
+	 * @param index position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException if index is negative or too big.
+	 */
+	@Override
+	public char get(int index) throws IndexOutOfBoundsException {
+		if (this.size <= index || index < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		int current = this.root;
+		while (index != this.rank(current)) {
+			if (index > this.rank(current)) {
+				index -= this.rank(current) + 1;
+				current = this.right(current);
+			} else {
+				current = this.left(current);
+			}
+		}
+		return this.data(current);
+	}
+
+	/**
+	 * This method operates in O(log N + length) time.
+	 *
+	 * @param pos    location of the beginning of the string to retrieve
+	 * @param length length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
+	 *                                   legitimate indexes within this tree.
+	 */
+	@Override
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+		if (pos < 0 || length < 0 || length > this.size - pos) {
+			throw new IndexOutOfBoundsException();
+		}
+		StringBuilder sb = new StringBuilder(length);
+		this.get(this.root, pos, length, sb);
+		return sb.toString();
+	}
+
+	/**
+	 * appends the length characters of the subtree starting at index. The index may
+	 * be negative, meaning the range started in an earlier subtree.
+	 */
+	private void get(int node, int index, int length, StringBuilder sb) {
+		if (node == NULL || length <= 0) {
+			return;
+		}
+		if (index < this.rank(node)) {
+			this.get(this.left(node), index, length, sb);
+		}
+		if (index <= this.rank(node) && this.rank(node) < index + length) {
+			sb.append(this.data(node));
+		}
+		if (index + length > this.rank(node) + 1) {
+			this.get(this.right(node), index - (this.rank(node) + 1), length, sb);
+		}
+	}
+
+	/**
+	 * @return the height of this tree, found from the balance codes in O(log N)
+	 */
+	@Override
+	public int fastHeight() {
+		int height = -1;
+		int current = this.root;
+		while (current != NULL) {
+			height++;
+			current = this.balance(current) == LEFT ? this.left(current) : this.right(current);
+		}
+		return height;
+	}
+
+	public int slowHeight() {
+		return this.slowHeight(this.root);
+	}
+
+	private int slowHeight(int node) {
+		if (node == NULL) {
+			return -1;
+		}
+		return Math.max(this.slowHeight(this.left(node)), this.slowHeight(this.right(node))) + 1;
+	}
+
+	public int slowSize() {
+		return this.slowSize(this.root);
+	}
+
+	private int slowSize(int node) {
+		if (node == NULL) {
+			return 0;
+		}
+		return this.slowSize(this.left(node)) + this.slowSize(this.right(node)) + 1;
+	}
+
+	/**
+	 * @return number of rotations since this tree was created.
+	 */
+	@Override
+	public int totalRotationCount() {
+		return this.totalRotationCount;
+	}
+
+	/**
+	 * @return The string of elements and ranks, given in an PRE-ORDER traversal of
+	 *         the tree, in the same format as EditTree's.
+	 */
+	public String toRankString() {
+		ArrayList<String> list = new ArrayList<String>();
+		this.toDebugString(this.root, list, false);
+		return list.toString();
+	}
+
+	/**
+	 * @return The string of elements, ranks and balance codes, given in an
+	 *         pre-order traversal of the tree, in the same format as EditTree's.
+	 */
+	public String toDebugString() {
+		ArrayList<String> list = new ArrayList<String>();
+		this.toDebugString(this.root, list, true);
+		return list.toString();
+	}
+
+	private void toDebugString(int node, ArrayList<String> list, boolean withBalance) {
+		if (node == NULL) {
+			return;
+		}
+		String str = this.data(node) + Integer.toString(this.rank(node));
+		if (withBalance) {
+			str += Node.Code.values()[this.balance(node)];
+		}
+		list.add(str);
+		this.toDebugString(this.left(node), list, withBalance);
+		this.toDebugString(this.right(node), list, withBalance);
+	}
+}
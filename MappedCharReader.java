@@ -0,0 +1,135 @@
+package editortrees;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the characters of a file one at a time by memory-mapping it a window at
+ * a time and decoding each window into a small reusable buffer, so that neither
+ * the bytes nor the characters of the whole file are ever held on the heap.
+ * Each window starts at the first byte the decoder has not used yet, so a
+ * character split across two windows is decoded whole.
+ *
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+class MappedCharReader implements Closeable {
+
+	private static final int WINDOW_BYTES = 1 << 26;
+	private static final int BUFFER_CHARS = 1 << 13;
+
+	private final FileChannel channel;
+	private final long fileSize;
+	private final CharsetDecoder decoder;
+	private final CharBuffer chars;
+	private long windowStart;
+	private MappedByteBuffer window;
+	private boolean flushing;
+	private boolean finished;
+
+	/**
+	 * @param path    file to read
+	 * @param charset encoding of the file
+	 * @throws IOException if the file cannot be opened or mapped
+	 */
+	MappedCharReader(Path path, Charset charset) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		this.fileSize = this.channel.size();
+		this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+		this.chars = CharBuffer.allocate(BUFFER_CHARS);
+		this.chars.flip();
+		this.window = this.map(0);
+	}
+
+	private MappedByteBuffer map(long start) throws IOException {
+		this.windowStart = start;
+		return this.channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_BYTES, this.fileSize - start));
+	}
+
+	/**
+	 * @return the number of characters left in the file, reading all of them
+	 * @throws IOException if the file is not valid in its charset or has more
+	 *                     characters than a tree can hold
+	 */
+	int countChars() throws IOException {
+		long count = this.chars.remaining();
+		while (this.decodeMore()) {
+			count += this.chars.remaining();
+		}
+		this.chars.position(this.chars.limit());
+		if (count > Integer.MAX_VALUE) {
+			throw new IOException("file has more characters than an EditTree can hold");
+		}
+		return (int) count;
+	}
+
+	/**
+	 * @return true if there are characters left to read
+	 * @throws IOException if the file is not valid in its charset
+	 */
+	boolean hasNext() throws IOException {
+		return this.chars.hasRemaining() || this.decodeMore();
+	}
+
+	/**
+	 * @return the next character of the file
+	 * @throws IOException if there are no characters left or the file is not valid
+	 *                     in its charset
+	 */
+	char next() throws IOException {
+		if (!this.hasNext()) {
+			throw new EOFException();
+		}
+		return this.chars.get();
+	}
+
+	/**
+	 * ensures the character buffer holds the next batch of characters, mapping the
+	 * next window whenever the decoder runs out of whole characters in this one
+	 *
+	 * @return false if the file has no more characters
+	 * @throws IOException if the file is not valid in its charset
+	 */
+	private boolean decodeMore() throws IOException {
+		this.chars.clear();
+		while (this.chars.position() == 0 && !this.finished) {
+			boolean lastWindow = this.windowStart + this.window.limit() == this.fileSize;
+			CoderResult result;
+			if (this.flushing) {
+				result = this.decoder.flush(this.chars);
+			} else {
+				result = this.decoder.decode(this.window, this.chars, lastWindow);
+			}
+			if (result.isError()) {
+				result.throwException();
+			}
+			if (result.isUnderflow()) {
+				if (this.flushing) {
+					this.finished = true;
+				} else if (lastWindow) {
+					this.flushing = true;
+				} else {
+					this.window = this.map(this.windowStart + this.window.position());
+				}
+			}
+		}
+		this.chars.flip();
+		return this.chars.hasRemaining();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+}
@@ -1,8 +1,7 @@
 package editortrees;
 
 import java.util.ArrayList;
-
-import editortrees.EditTree.BooleanContainer;
+import java.util.Arrays;
 
 /**
  * A node in a height-balanced binary tree with rank. Except for the NULL_NODE,
@@ -38,7 +37,14 @@ public class Node {
 	Node left, right; // subtrees
 	int rank; // inorder position of this node within its own subtree.
 	Code balance;
-
+	int newlines; // number of '\n' characters in this subtree
+	// summaries of this subtree made so far, as pairs of a Summary and its value,
+	// or null when there are none. Copies of a tree share these arrays, so a new
+	// array is made rather than changing one.
+	Object[] summaries;
+
+	// Only the graphical debugger uses this, so it stays null until the display
+	// asks for it rather than costing an extra object per character.
 	public DisplayableNodeWrapper displayableNodeWrapper;
 	// Feel free to add other fields that you find useful.
 	// You probably want a NULL_NODE, but you can comment it out if you decide
@@ -47,6 +53,9 @@ public class Node {
 	// but they could be anything since you shouldn't ever actually refer to them in
 	// your code.
 	static final Node NULL_NODE = new Node('\0', null, null);
+	// An AVL tree with 2^31 nodes is less than 46 levels tall, so a path from the
+	// root, even with one more level for a new leaf, fits in this many nodes.
+	static final int MAX_HEIGHT = 48;
 	// Node parent; You may want parent, but think twice: keeping it up-to-date
 	// takes effort too, maybe more than it's worth.
 
@@ -58,10 +67,13 @@ public class Node {
 	 * @param right
 	 */
 	public Node(char data, Node left, Node right) {
-		this.displayableNodeWrapper = new DisplayableNodeWrapper(this);
 		this.data = data;
 		this.left = left;
 		this.right = right;
+		// the NULL_NODE is made before there is a NULL_NODE to be its children
+		if (left != null && right != null) {
+			this.updateSummaries();
+		}
 	}
 
 	/**
@@ -72,13 +84,12 @@ public class Node {
 	 * @param rank
 	 */
 	public Node(char data, Code balance, int rank) {
-		this.displayableNodeWrapper = new DisplayableNodeWrapper(this);
 		this.data = data;
 		this.left = NULL_NODE;
 		this.right = NULL_NODE;
 		this.balance = balance;
 		this.rank = rank;
-
+		this.newlines = newlinesIn(data);
 	}
 
 	/**
@@ -90,11 +101,153 @@ public class Node {
 	public Node(char data) {
 		// Make a leaf
 		this(data, NULL_NODE, NULL_NODE);
-		this.displayableNodeWrapper = new DisplayableNodeWrapper(this);
 		this.balance = Code.SAME;
 		this.rank = 0;
 	}
 
+	/**
+	 * ensures a new node with the same data, children, rank and balance code is
+	 * returned, so a persistent tree can change the copy while older versions
+	 * still share this one
+	 * 
+	 * @return Node
+	 */
+	public Node copy() {
+		Node copy = new Node(this.data, this.left, this.right);
+		copy.rank = this.rank;
+		copy.balance = this.balance;
+		return copy;
+	}
+
+	/**
+	 * ensures newlines counts the '\n' characters in this node and its children's
+	 * subtrees, which must already be right, and that the other summaries are made
+	 * again the next time they are asked for
+	 */
+	public void updateSummaries() {
+		this.newlines = this.left.newlines + newlinesIn(this.data) + this.right.newlines;
+		this.summaries = null;
+	}
+
+	/**
+	 * ensures this subtree's summary of the given kind is returned, making it from
+	 * the children's first if it has not been made since this subtree last changed.
+	 * A summary depends only on the characters, so it stays right when the
+	 * subtree is moved to another tree.
+	 * 
+	 * @param kind
+	 * @return the summary of this subtree's characters
+	 */
+	@SuppressWarnings("unchecked")
+	<S> S summary(Summary<S> kind) {
+		if (this == NULL_NODE) {
+			return kind.identity();
+		}
+		Object[] made = this.summaries;
+		if (made == null) {
+			made = new Object[0];
+		}
+		for (int i = 0; i < made.length; i += 2) {
+			if (made[i] == kind) {
+				return (S) made[i + 1];
+			}
+		}
+		S summary = kind.combine(kind.combine(this.left.summary(kind), kind.of(this.data)),
+				this.right.summary(kind));
+		made = Arrays.copyOf(made, made.length + 2);
+		made[made.length - 2] = kind;
+		made[made.length - 1] = summary;
+		this.summaries = made;
+		return summary;
+	}
+
+	/**
+	 * ensures no node of this subtree keeps a summary of the given kind
+	 * 
+	 * @param kind
+	 */
+	void dropSummary(Summary<?> kind) {
+		if (this == NULL_NODE) {
+			return;
+		}
+		Object[] made = this.summaries;
+		if (made != null) {
+			for (int i = 0; i < made.length; i += 2) {
+				if (made[i] == kind) {
+					Object[] kept = new Object[made.length - 2];
+					System.arraycopy(made, 0, kept, 0, i);
+					System.arraycopy(made, i + 2, kept, i, made.length - i - 2);
+					this.summaries = kept.length == 0 ? null : kept;
+					break;
+				}
+			}
+		}
+		this.left.dropSummary(kind);
+		this.right.dropSummary(kind);
+	}
+
+	/**
+	 * ensures the summary of the in-order positions from through to-1 of this
+	 * subtree is returned, using whole subtrees' summaries for all but the two
+	 * paths down to the ends of the range
+	 * 
+	 * @param kind the kind of summary
+	 * @param size number of nodes in this subtree
+	 * @param from first position of the range
+	 * @param to   position just past the range
+	 * @return summary of the range
+	 */
+	<S> S summary(Summary<S> kind, int size, int from, int to) {
+		if (from <= 0 && to >= size) {
+			return this.summary(kind);
+		}
+		S summary = kind.identity();
+		if (from < this.rank) {
+			summary = this.left.summary(kind, this.rank, from, Math.min(to, this.rank));
+		}
+		if (from <= this.rank && this.rank < to) {
+			summary = kind.combine(summary, kind.of(this.data));
+		}
+		if (to > this.rank + 1) {
+			summary = kind.combine(summary, this.right.summary(kind, size - this.rank - 1,
+					Math.max(0, from - this.rank - 1), to - this.rank - 1));
+		}
+		return summary;
+	}
+
+	/**
+	 * @param ch
+	 * @return 1 if ch is a newline, otherwise 0
+	 */
+	static int newlinesIn(char ch) {
+		return ch == '\n' ? 1 : 0;
+	}
+
+	/**
+	 * ensures this node has a wrapper for the graphical debugger, creating it the
+	 * first time it is asked for
+	 * 
+	 * @return DisplayableNodeWrapper
+	 */
+	public DisplayableNodeWrapper getDisplayableNodeWrapper() {
+		if (this.displayableNodeWrapper == null) {
+			this.displayableNodeWrapper = new DisplayableNodeWrapper(this);
+		}
+		return this.displayableNodeWrapper;
+	}
+
+	/**
+	 * ensures every node in this subtree, and the NULL_NODE, has a wrapper for the
+	 * graphical debugger before it is displayed
+	 */
+	public void createDisplayableNodeWrappers() {
+		this.getDisplayableNodeWrapper();
+		if (this != NULL_NODE) {
+			left.createDisplayableNodeWrappers();
+			right.createDisplayableNodeWrappers();
+		}
+	}
+
 	// Provided to you to enable testing, please don't change.
 	int slowHeight() {
 		if (this == NULL_NODE) {
@@ -122,280 +275,6 @@ public class Node {
 	// debugger. See
 	// the unit test throwing an error and the README.txt file.
 
-	/**
-	 * adds a char to the end of the list (in-order)
-	 * 
-	 * @param ch
-	 * @return Node
-	 */
-	public Node add(char ch, BooleanContainer booleanContainer) {
-		// creates the new node at a leaf
-		if (this == NULL_NODE) {
-			return new Node(ch);
-		}
-		// adds the node to the right most place because of in order transversal
-		else {
-			right = right.add(ch, booleanContainer);
-			// recursing back up
-			// if booleancontainer is false, we will not change the balance codes anymore
-			if (booleanContainer.value) {
-				if (this.balance == Code.SAME) {
-					this.balance = Code.RIGHT;
-				} else if (this.balance == Code.LEFT) {
-					this.balance = Code.SAME;
-					booleanContainer.value = false;
-				} else // (this.balance == Code.RIGHT)
-				{
-					// single left rotation
-					booleanContainer.value = false;
-					// increment the rotation counter of the boolean object
-					booleanContainer.rotationCount += 1;
-					return this.singleLeftRotation(this, this.right);
-				}
-			}
-		}
-		return this;
-	}
-
-	/**
-	 * ensures a new node is added at the specified index
-	 * 
-	 * @param ch
-	 * @param index
-	 * @return Node
-	 */
-	public Node add(char ch, int index, BooleanContainer booleanContainer) {
-		// creates a new node at a leaf
-		if (this == NULL_NODE) {
-			// walking back up
-			return new Node(ch);
-		}
-		// recurse to the right
-		else if (index > this.rank) {
-			// since we are adding to the right, no incrementing is needed to rank
-			//
-			right = right.add(ch, index - (this.rank + 1), booleanContainer);
-			// on the way up the tree
-			// If the boolean container value is true, it means we still need to edit
-			// and change the balance codes, else if it is false we do not want to change
-			// anything else. The value is initially true, until we either change a balance
-			// code to Code.SAME OR we do some rotation.
-			if (booleanContainer.value) {
-				if (this.balance == Code.SAME) {
-					this.balance = Code.RIGHT;
-				} else if (this.balance == Code.LEFT) {
-					this.balance = Code.SAME;
-					booleanContainer.value = false;
-				} else // (this.balance == Code.RIGHT)
-				{
-					// single left rotation required or double left rotation
-					// if the node that needs rotation child is the opposite balance,
-					// so that means that if the right child balance code is left, do
-					// double left rotation
-					booleanContainer.value = false;
-					if (this.right.balance == Code.LEFT) {
-						booleanContainer.rotationCount += 2;
-						return this.doubleLeftRotation(this, this.right.left, this.right);
-					} else // (this.right.balance == Code.RIGHT)
-					{
-						booleanContainer.rotationCount += 1;
-						return this.singleLeftRotation(this, this.right);
-					}
-					// do a single rotation if the right child balance code is right
-				}
-			}
-
-		}
-		// recurse to the left and add one to the current nodes rank
-		else {
-			// since we are adding to the left, we want to increment the rank
-			this.rank++;
-			left = left.add(ch, index, booleanContainer);
-			// on the way up the tree
-			// If the boolean container value is true, it means we still need to edit
-			// and change the balance codes, else if it is false we do not want to change
-			// anything else. The value is initially true, until we either change a balance
-			// code to Code.SAME OR we do some rotation.
-			if (booleanContainer.value) {
-				if (this.balance == Code.SAME) {
-					this.balance = Code.LEFT;
-				} else if (this.balance == Code.RIGHT) {
-					this.balance = Code.SAME;
-					booleanContainer.value = false;
-				} else // (this.balance == Code.LEFT)
-				{
-					// single right rotation required or double right rotation
-					// if the node that needs rotation child is the opposite balance,
-					// so that means that if the left child balance code is right, do
-					// double right rotation
-					booleanContainer.value = false;
-					if (this.left.balance == Code.RIGHT) {
-						booleanContainer.rotationCount += 2;
-						return this.doubleRightRotation(this, this.left.right, this.left);
-
-					} else // (this.left.balance == Code.LEFT)
-					{
-						booleanContainer.rotationCount += 1;
-						return this.singleRightRotation(this, this.left);
-					}
-				}
-			}
-		}
-		// always return the current element to "rebuild" the tree as we go
-		return this;
-	}
-
-	public Node delete(int index, BooleanContainer booleanContainer) {
-		//recurse to node to be deleted
-		if (index > this.rank) {
-			//keep track of the height before recursing right to delete
-			int previousHeight = this.right.fastHeight();
-			//recurse right to delete
-			right = right.delete(index - (this.rank + 1), booleanContainer);
-			//get the height after node has been deleted from the right
-			int currentHeight = this.right.fastHeight();
-			//check to see if the height of the right subtree changed after deletion
-			//if so then make the boolean container value false
-			if (previousHeight == currentHeight) {
-				booleanContainer.value = false;
-			}
-			//if the value is true, continue to travel back up the tree and check balance codes
-			if (booleanContainer.value) {
-				//tip the codes. No rotations needed
-				if (this.balance == Code.RIGHT) {
-					this.balance = Code.SAME;
-				} else if (this.balance == Code.SAME) {
-					this.balance = Code.LEFT;
-				} else { //rotations needed
-					//make a temporary node in order to modify the current node with rotations
-					Node temp = NULL_NODE;
-					//checks the balance code of the left child to perform correct rotation
-					if (this.left.balance == Code.LEFT) {
-						temp = this.singleRightRotation(this, this.left);
-						booleanContainer.rotationCount += 1;
-					} else if (this.left.balance == Code.SAME) {
-						temp = this.singleRightRotation(this, this.left);
-						booleanContainer.rotationCount += 1;
-						temp.balance = Code.RIGHT;
-						temp.right.balance = Code.LEFT;
-						//no need to continue rotating
-						booleanContainer.value = false;
-					} else {
-						temp = this.doubleRightRotation(this, this.left.right, this.left);
-						booleanContainer.rotationCount += 2;
-					}
-					return temp;
-				}
-			}
-		} else if (index < this.rank) {
-			//subract from the rank after deleting from the left subtree
-			this.rank--;
-			//get the height before deletion
-			int previousHeight = this.left.fastHeight();
-			left = left.delete(index, booleanContainer);
-			//gets the height after the deletion
-			int currentHeight = this.left.fastHeight();
-			//if the heights are the same before and after rotation then there is no need for more rotations
-			if (previousHeight == currentHeight) {
-				booleanContainer.value = false;
-			}
-			//only looks for needed rotations if value is positive
-			if (booleanContainer.value) {
-				//checks the balance codes to determine if rotation is needed
-				if (this.balance == Code.LEFT) {
-					this.balance = Code.SAME;
-				} else if (this.balance == Code.SAME) {
-					this.balance = Code.RIGHT;
-				} else {
-					//creates a temp node to be used to set this to rotations return value
-					Node temp = NULL_NODE;
-					//looks at the right childs balance to determine rotation
-					if (this.right.balance == Code.RIGHT) {
-						temp = this.singleLeftRotation(this, this.right);
-						booleanContainer.rotationCount += 1;
-					} else if (this.right.balance == Code.SAME) {
-						temp = this.singleLeftRotation(this, this.right);
-						booleanContainer.rotationCount += 1;
-						temp.balance = Code.LEFT;
-						temp.left.balance = Code.RIGHT;
-						booleanContainer.value = false;
-					} else {
-						temp = this.doubleLeftRotation(this, this.right.left, this.right);
-						booleanContainer.rotationCount += 2;
-					}
-					return temp;
-				}
-			}
-		} else { // rank == index (at target node)
-					// case 1 no children
-			if (this.left == NULL_NODE && this.right == NULL_NODE) {
-				booleanContainer.data = this.data;
-				return NULL_NODE;
-			}
-			// case 2 one child
-			else if (this.left == NULL_NODE && this.right != NULL_NODE) {
-				booleanContainer.data = this.data;
-				return this.right;
-			} else if (this.left != NULL_NODE && this.right == NULL_NODE) {
-				booleanContainer.data = this.data;
-				return this.left;
-			}
-			// case 3 two children
-			else {
-				//go to the in-order successor
-				Node current = this.right;
-				while (current.left != NULL_NODE) {
-					current = current.left;
-				}
-				//stores the data of the node to delete
-				char tempData = this.data;
-				//switches the nodes data to the in order successor's data
-				this.data = current.data;
-				//switches the successors data to the data to delete
-				current.data = tempData;
-				//checks the height before deletion
-				int previousHeight = this.right.fastHeight();
-				//delete the in-order successor
-				right = right.delete(index - this.rank, booleanContainer);
-				//gets the height after deletion
-				int currentHeight = this.right.fastHeight();
-				//if the height does not change then no rotations are needed
-				if (previousHeight == currentHeight) {
-					booleanContainer.value = false;
-				}
-				//same code as above after the right deletion
-				if (booleanContainer.value) {
-					if (this.balance == Code.RIGHT) {
-						this.balance = Code.SAME;
-					} else if (this.balance == Code.SAME) {
-						this.balance = Code.LEFT;
-					} else {
-						Node temp = NULL_NODE;
-						if (this.left.balance == Code.LEFT) {
-							temp = this.singleRightRotation(this, this.left);
-							booleanContainer.rotationCount += 1;
-						} else if (this.left.balance == Code.SAME) {
-							temp = this.singleRightRotation(this, this.left);
-							booleanContainer.rotationCount += 1;
-							temp.balance = Code.RIGHT;
-							temp.right.balance = Code.LEFT;
-							booleanContainer.value = false;
-						} else {
-							temp = this.doubleRightRotation(this, this.left.right, this.left);
-							booleanContainer.rotationCount += 2;
-						}
-						return temp;
-					}
-					
-				}
-			}
-		}
-		//always return the current node to rebuild the tree and building back up
-		return this;
-	}
-	
-	
-
 	/**
 	 * ensures a single left rotation is carried out to keep the tree height
 	 * balanced
@@ -408,10 +287,12 @@ public class Node {
 		// switch the nodes according to the rotation
 		A.right = B.left;
 		B.left = A;
-		// updating ranks and balance codes
+		// updating ranks, newline counts and balance codes
 		A.balance = Code.SAME;
 		B.balance = Code.SAME;
 		B.rank += A.rank + 1;
+		A.updateSummaries();
+		B.updateSummaries();
 		// return the child to be reattached at that point
 		return B;
 	}
@@ -427,10 +308,12 @@ public class Node {
 	public Node singleRightRotation(Node A, Node B) {
 		A.left = B.right;
 		B.right = A;
-		// updating ranks and balance codes
+		// updating ranks, newline counts and balance codes
 		A.balance = Code.SAME;
 		B.balance = Code.SAME;
 		A.rank -= B.rank + 1;
+		A.updateSummaries();
+		B.updateSummaries();
 		// return the child to be reattached at that point
 		return B;
 	}
@@ -454,6 +337,9 @@ public class Node {
 		// similar to right-left changing ranks in that order
 		C.rank -= B.rank + 1;
 		B.rank += A.rank + 1;
+		A.updateSummaries();
+		C.updateSummaries();
+		B.updateSummaries();
 		// setting balance codes based on what B's value was previously
 		if (B.balance == Code.LEFT) {
 			A.balance = Code.SAME;
@@ -488,6 +374,9 @@ public class Node {
 		// ranks update in left right fashion
 		B.rank += A.rank + 1;
 		C.rank -= B.rank + 1;
+		A.updateSummaries();
+		C.updateSummaries();
+		B.updateSummaries();
 		// same balance code updating in the other double rotation
 		if (B.balance == Code.LEFT) {
 			A.balance = Code.SAME;
@@ -510,19 +399,68 @@ public class Node {
 	 * @return data of the node
 	 */
 	public char get(int index) {
-		// the node was found
-		if (index == this.rank) {
-			return this.data;
-		}
-		// recurse to the right
-		else if (index > this.rank) {
-			return right.get(index - (this.rank + 1));
+		Node current = this;
+		while (index != current.rank) {
+			// descend to the right
+			if (index > current.rank) {
+				index -= current.rank + 1;
+				current = current.right;
+			}
+			// descend to the left
+			else {
+				current = current.left;
+			}
 		}
-		// recurse to the left
-		else {
-			return left.get(index);
+		// the node was found
+		return current.data;
+	}
+
+	/**
+	 * ensures the number of newlines before the given in-order position of this
+	 * subtree is returned
+	 * 
+	 * @param index position within this subtree, up to its size
+	 * @return number of '\n' characters before index
+	 */
+	public int newlinesBefore(int index) {
+		int count = 0;
+		Node current = this;
+		while (current != NULL_NODE) {
+			if (index <= current.rank) {
+				current = current.left;
+			} else {
+				// everything up to and including this node is before index
+				count += current.left.newlines + newlinesIn(current.data);
+				index -= current.rank + 1;
+				current = current.right;
+			}
 		}
+		return count;
+	}
 
+	/**
+	 * ensures the in-order position of the count-th newline of this subtree is
+	 * returned
+	 * 
+	 * @param count which newline to find, from 1 up to newlines
+	 * @return position of that newline within this subtree
+	 */
+	public int positionOfNewline(int count) {
+		int position = 0;
+		Node current = this;
+		while (true) {
+			if (count <= current.left.newlines) {
+				current = current.left;
+				continue;
+			}
+			count -= current.left.newlines;
+			if (current.data == '\n' && count == 1) {
+				return position + current.rank;
+			}
+			count -= newlinesIn(current.data);
+			position += current.rank + 1;
+			current = current.right;
+		}
 	}
 
 	/**
@@ -695,40 +633,33 @@ public class Node {
 	}
 
 	/**
-	 * ensures a string starting at the specified index and of the length is returned.
-	 * The string will be in-order transversal of the string
-	 * @param index to start
-	 * @param length to get
-	 * @return String
+	 * ensures the length characters starting at index, in in-order transversal, are
+	 * copied into dst starting at offset. Only the nodes in the range and the
+	 * paths down to its ends are visited.
+	 * 
+	 * @param index  position within this subtree of the first character to copy
+	 * @param length number of characters to copy
+	 * @param dst    where to copy the characters
+	 * @param offset where the first character goes in dst
+	 * @return the offset just past the last character copied
 	 */
-	public void get(int index, int length, StringBuilder sb) {
-		//if you get a null node return an empty string
-		if (this == NULL_NODE) {
-			return;
+	public int getChars(int index, int length, char[] dst, int offset) {
+		if (this == NULL_NODE || length <= 0) {
+			return offset;
 		}
-		//look for the start index to the right of the current node
+		// the whole range is on one side of this node
 		if (index > rank) {
-			right.get(index - (this.rank + 1), length, sb);
-		}
-		//either the start index is to the left of the current node or ends at the current node
-		else if (index + length <= rank) {
-			left.get(index, length, sb);
-		} 
-		//start of the string
-		else if (index == rank) {
-			sb.append(this.data);
-			right.get(index - this.rank, length, sb);
-		}
-		//else will return the nodes to the left within the index and length
-		//then returns the current node's data
-		//then returns the nodes' data to the left that is within the length
-		else {
-			this.left.get(index, length, sb);
-			sb.append(data);
-			this.right.get(index - (this.rank + 1), length, sb);
-		}
-		
-		
+			return right.getChars(index - (rank + 1), length, dst, offset);
+		}
+		if (index + length <= rank) {
+			return left.getChars(index, length, dst, offset);
+		}
+		// the range runs through this node, so take the part of it on the left,
+		// then this node, then the rest from the start of the right subtree
+		int leftCount = rank - index;
+		offset = left.getChars(index, leftCount, dst, offset);
+		dst[offset++] = data;
+		return right.getChars(0, length - leftCount - 1, dst, offset);
 	}
 
 	/**
@@ -0,0 +1,149 @@
+package editortrees;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * An IndexedEditTree whose nodes live outside the Java heap, as fixed-size
+ * records in direct ByteBuffers. The garbage collector only sees one buffer per
+ * page of nodes, so even multi-gigabyte documents do not add to GC pause times.
+ *
+ * Each 16 byte record holds the data (a char), the left and right ids, and the
+ * rank and balance code packed into one int with the code in the low two bits.
+ * That leaves 30 bits of rank, so a tree holds at most 2^30 - 1 characters.
+ *
+ * The garbage collector frees a page's memory once it collects the small
+ * ByteBuffer object in front of it. close() drops the tree's references to its
+ * pages, so they can go as soon as the tree is closed even if the tree object
+ * itself is still reachable. The tree cannot be used after it is closed.
+ *
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+public class OffHeapEditTree extends IndexedEditTree implements AutoCloseable {
+
+	private static final int RECORD_BYTES = 16;
+	private static final int DATA = 0, LEFT_ID = 4, RIGHT_ID = 8, RANK_AND_CODE = 12;
+	private static final int PAGE_BITS = 16;
+	private static final int PAGE_NODES = 1 << PAGE_BITS;
+	// ranks must fit above the two balance code bits
+	private static final int MAX_PAGES = 1 << (30 - PAGE_BITS);
+
+	// null once the tree is closed
+	private ByteBuffer[] pages;
+
+	/**
+	 * Construct an empty tree
+	 */
+	public OffHeapEditTree() {
+		this.pages = new ByteBuffer[] { newPage() };
+	}
+
+	/**
+	 * Create a tree whose toString is s in O(N) time, with the same shape as
+	 * EditTree(String) builds
+	 *
+	 * @param s
+	 */
+	public OffHeapEditTree(String s) {
+		this();
+		this.fill(s);
+	}
+
+	private static ByteBuffer newPage() {
+		return ByteBuffer.allocateDirect(PAGE_NODES * RECORD_BYTES).order(ByteOrder.nativeOrder());
+	}
+
+	private ByteBuffer page(int node) {
+		if (this.pages == null) {
+			throw new IllegalStateException("the tree was closed");
+		}
+		return this.pages[node >>> PAGE_BITS];
+	}
+
+	/**
+	 * Lets the garbage collector free the tree's off-heap pages. Using the tree
+	 * afterwards throws an IllegalStateException, and closing it again does
+	 * nothing.
+	 */
+	@Override
+	public void close() {
+		this.pages = null;
+	}
+
+	private static int offset(int node, int field) {
+		return ((node & (PAGE_NODES - 1)) * RECORD_BYTES) + field;
+	}
+
+	@Override
+	char data(int node) {
+		return this.page(node).getChar(offset(node, DATA));
+	}
+
+	@Override
+	void setData(int node, char ch) {
+		this.page(node).putChar(offset(node, DATA), ch);
+	}
+
+	@Override
+	int left(int node) {
+		return this.page(node).getInt(offset(node, LEFT_ID));
+	}
+
+	@Override
+	void setLeft(int node, int left) {
+		this.page(node).putInt(offset(node, LEFT_ID), left);
+	}
+
+	@Override
+	int right(int node) {
+		return this.page(node).getInt(offset(node, RIGHT_ID));
+	}
+
+	@Override
+	void setRight(int node, int right) {
+		this.page(node).putInt(offset(node, RIGHT_ID), right);
+	}
+
+	@Override
+	int rank(int node) {
+		return this.page(node).getInt(offset(node, RANK_AND_CODE)) >>> 2;
+	}
+
+	@Override
+	void setRank(int node, int rank) {
+		ByteBuffer page = this.page(node);
+		int offset = offset(node, RANK_AND_CODE);
+		page.putInt(offset, (rank << 2) | (page.getInt(offset) & 3));
+	}
+
+	@Override
+	byte balance(int node) {
+		return (byte) (this.page(node).getInt(offset(node, RANK_AND_CODE)) & 3);
+	}
+
+	@Override
+	void setBalance(int node, byte balance) {
+		ByteBuffer page = this.page(node);
+		int offset = offset(node, RANK_AND_CODE);
+		page.putInt(offset, (page.getInt(offset) & ~3) | balance);
+	}
+
+	@Override
+	int capacity() {
+		if (this.pages == null) {
+			throw new IllegalStateException("the tree was closed");
+		}
+		return this.pages.length * PAGE_NODES;
+	}
+
+	@Override
+	void grow() {
+		if (this.pages.length == MAX_PAGES) {
+			throw new IllegalStateException("an off-heap tree holds at most 2^30 - 1 characters");
+		}
+		this.pages = Arrays.copyOf(this.pages, this.pages.length + 1);
+		this.pages[this.pages.length - 1] = newPage();
+	}
+}
@@ -0,0 +1,68 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Tests for closing an OffHeapEditTree.
+ *
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+public class OffHeapEditTreeTest {
+
+	@Test(expected = IllegalStateException.class)
+	public void testGetAfterClose() {
+		OffHeapEditTree t = new OffHeapEditTree("abcdefghij");
+		t.close();
+		t.get(3);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testAddAfterClose() {
+		OffHeapEditTree t = new OffHeapEditTree("abcdefghij");
+		t.close();
+		t.add('k');
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testAddToEmptyTreeAfterClose() {
+		OffHeapEditTree t = new OffHeapEditTree();
+		t.close();
+		t.add('a', 0);
+	}
+
+	@Test
+	public void testCloseTwice() {
+		OffHeapEditTree t = new OffHeapEditTree("abc");
+		assertEquals("abc", t.toString());
+		t.close();
+		t.close();
+		try {
+			t.delete(0);
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testTryWithResources() {
+		OffHeapEditTree closed;
+		try (OffHeapEditTree t = new OffHeapEditTree()) {
+			for (char ch = 'a'; ch <= 'z'; ch++) {
+				t.add(ch);
+			}
+			assertEquals("abcdefghijklmnopqrstuvwxyz", t.toString());
+			closed = t;
+		}
+		try {
+			closed.get(0, 3);
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+}
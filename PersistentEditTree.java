@@ -0,0 +1,415 @@
+package editortrees;
+
+import java.util.ArrayList;
+
+/**
+ * A height-balanced binary tree with rank, like EditTree, except that no node is
+ * ever changed once another version of the tree can see it. add and delete copy
+ * the nodes on the path they walk (and the few siblings a rotation moves) and
+ * leave the old nodes alone, so each edit makes O(log N) new nodes and
+ * snapshot() is O(1). Readers can hold on to a snapshot while the writer keeps
+ * editing.
+ *
+ * Given the same calls it builds the same shape, ranks, balance codes and
+ * rotation counts as EditTree.
+ *
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+public class PersistentEditTree implements EditableTree {
+
+	Node root;
+	private int size;
+	private int totalRotationCount;
+	// path from the root taken by the current add or delete, which holds the
+	// copies made for this version
+	private final Node[] path = new Node[Node.MAX_HEIGHT];
+	private final boolean[] wentLeft = new boolean[Node.MAX_HEIGHT];
+
+	/**
+	 * Construct an empty tree
+	 */
+	public PersistentEditTree() {
+		this.root = Node.NULL_NODE;
+	}
+
+	/**
+	 * Create a tree whose toString is s in O(N) time
+	 *
+	 * @param s
+	 */
+	public PersistentEditTree(String s) {
+		// the nodes EditTree(String) builds are only ever seen by this tree
+		this.root = new EditTree(s).root;
+		this.size = s.length();
+	}
+
+	/**
+	 * Create a tree with the same shape and contents as e in O(N) time, with all
+	 * new nodes
+	 *
+	 * @param e
+	 */
+	public PersistentEditTree(EditTree e) {
+		this.root = new EditTree(e).root;
+		this.size = e.size();
+	}
+
+	private PersistentEditTree(Node root, int size, int totalRotationCount) {
+		this.root = root;
+		this.size = size;
+		this.totalRotationCount = totalRotationCount;
+	}
+
+	/**
+	 * Returns the current version of this tree in O(1) time. Edits to either tree
+	 * afterwards are not seen by the other.
+	 *
+	 * @return a tree sharing all of its nodes with this one
+	 */
+	public PersistentEditTree snapshot() {
+		return new PersistentEditTree(this.root, this.size, this.totalRotationCount);
+	}
+
+	/**
+	 * return the string produced by an in-order traversal of this tree
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(this.size);
+		this.root.toString(sb);
+		return sb.toString();
+	}
+
+	/**
+	 * @return the number of nodes in this tree, not counting the NULL_NODE
+	 */
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @param ch character to add to the end of this tree.
+	 */
+	@Override
+	public void add(char ch) {
+		this.add(ch, this.size);
+	}
+
+	/**
+	 * @param ch    character to add
+	 * @param index character added in this in-order position. Valid positions
+	 *              range from 0 to the size of the tree, inclusive.
+	 * @throws IndexOutOfBoundsException if index is negative or too large for
+	 *                                   this tree.
+	 */
+	@Override
+	public void add(char ch, int index) throws IndexOutOfBoundsException {
+		if (this.size < index || index < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		int depth = 0;
+		Node current = this.root;
+		while (current != Node.NULL_NODE) {
+			current = this.copyOnPath(depth, current);
+			current.newlines += Node.newlinesIn(ch);
+			if (index > current.rank) {
+				index -= current.rank + 1;
+				this.wentLeft[depth] = false;
+				current = current.right;
+			} else {
+				current.rank++;
+				this.wentLeft[depth] = true;
+				current = current.left;
+			}
+			depth++;
+		}
+		this.replaceChild(depth, new Node(ch));
+		this.rebalanceAfterAdd(depth);
+		this.size++;
+	}
+
+	/**
+	 * Walks back up the recorded path after a node was added, until a balance code
+	 * tips to SAME or a rotation restores the old height. Every node a rotation
+	 * here moves is on the path, so they are all copies already.
+	 *
+	 * @param depth number of nodes on the recorded path
+	 */
+	private void rebalanceAfterAdd(int depth) {
+		for (int level = depth - 1; level >= 0; level--) {
+			Node node = this.path[level];
+			if (this.wentLeft[level]) {
+				if (node.balance == Node.Code.SAME) {
+					node.balance = Node.Code.LEFT;
+					continue;
+				} else if (node.balance == Node.Code.RIGHT) {
+					node.balance = Node.Code.SAME;
+				} else if (node.left.balance == Node.Code.RIGHT) {
+					this.totalRotationCount += 2;
+					this.replaceChild(level, node.doubleRightRotation(node, node.left.right, node.left));
+				} else {
+					this.totalRotationCount += 1;
+					this.replaceChild(level, node.singleRightRotation(node, node.left));
+				}
+			} else {
+				if (node.balance == Node.Code.SAME) {
+					node.balance = Node.Code.RIGHT;
+					continue;
+				} else if (node.balance == Node.Code.LEFT) {
+					node.balance = Node.Code.SAME;
+				} else if (node.right.balance == Node.Code.LEFT) {
+					this.totalRotationCount += 2;
+					this.replaceChild(level, node.doubleLeftRotation(node, node.right.left, node.right));
+				} else {
+					this.totalRotationCount += 1;
+					this.replaceChild(level, node.singleLeftRotation(node, node.right));
+				}
+			}
+			return;
+		}
+	}
+
+	/**
+	 * @param pos position of character to delete from this tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	@Override
+	public char delete(int pos) throws IndexOutOfBoundsException {
+		if (pos >= this.size || pos < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		int depth = 0;
+		Node current = this.copyOnPath(depth, this.root);
+		int index = pos;
+		while (index != current.rank) {
+			if (index > current.rank) {
+				index -= current.rank + 1;
+				this.wentLeft[depth] = false;
+				current = current.right;
+			} else {
+				current.rank--;
+				this.wentLeft[depth] = true;
+				current = current.left;
+			}
+			depth++;
+			current = this.copyOnPath(depth, current);
+		}
+		char deleted = current.data;
+		// every subtree on the path loses the deleted character
+		for (int level = 0; level < depth; level++) {
+			this.path[level].newlines -= Node.newlinesIn(deleted);
+		}
+		if (current.left != Node.NULL_NODE && current.right != Node.NULL_NODE) {
+			// replace the data with the in-order successor's and remove that instead
+			Node target = current;
+			target.newlines -= Node.newlinesIn(deleted);
+			this.wentLeft[depth] = false;
+			depth++;
+			int below = depth;
+			current = this.copyOnPath(depth, current.right);
+			while (current.left != Node.NULL_NODE) {
+				current.rank--;
+				this.wentLeft[depth] = true;
+				depth++;
+				current = this.copyOnPath(depth, current.left);
+			}
+			target.data = current.data;
+			for (int level = below; level < depth; level++) {
+				this.path[level].newlines -= Node.newlinesIn(current.data);
+			}
+		}
+		this.replaceChild(depth, current.left == Node.NULL_NODE ? current.right : current.left);
+		this.rebalanceAfterDelete(depth);
+		this.size--;
+		return deleted;
+	}
+
+	/**
+	 * Walks back up the recorded path after a node was removed, until a balance
+	 * code tips away from SAME or a rotation around a balanced child keeps the old
+	 * height. The sibling a rotation moves is off the path, so it (and its child,
+	 * for a double rotation) is copied first.
+	 *
+	 * @param depth number of nodes on the recorded path
+	 */
+	private void rebalanceAfterDelete(int depth) {
+		for (int level = depth - 1; level >= 0; level--) {
+			Node node = this.path[level];
+			Node temp;
+			if (this.wentLeft[level]) {
+				if (node.balance == Node.Code.LEFT) {
+					node.balance = Node.Code.SAME;
+					continue;
+				} else if (node.balance == Node.Code.SAME) {
+					node.balance = Node.Code.RIGHT;
+					return;
+				}
+				node.right = node.right.copy();
+				if (node.right.balance == Node.Code.RIGHT) {
+					this.totalRotationCount += 1;
+					temp = node.singleLeftRotation(node, node.right);
+				} else if (node.right.balance == Node.Code.SAME) {
+					this.totalRotationCount += 1;
+					temp = node.singleLeftRotation(node, node.right);
+					temp.balance = Node.Code.LEFT;
+					temp.left.balance = Node.Code.RIGHT;
+					this.replaceChild(level, temp);
+					return;
+				} else {
+					this.totalRotationCount += 2;
+					node.right.left = node.right.left.copy();
+					temp = node.doubleLeftRotation(node, node.right.left, node.right);
+				}
+			} else {
+				if (node.balance == Node.Code.RIGHT) {
+					node.balance = Node.Code.SAME;
+					continue;
+				} else if (node.balance == Node.Code.SAME) {
+					node.balance = Node.Code.LEFT;
+					return;
+				}
+				node.left = node.left.copy();
+				if (node.left.balance == Node.Code.LEFT) {
+					this.totalRotationCount += 1;
+					temp = node.singleRightRotation(node, node.left);
+				} else if (node.left.balance == Node.Code.SAME) {
+					this.totalRotationCount += 1;
+					temp = node.singleRightRotation(node, node.left);
+					temp.balance = Node.Code.RIGHT;
+					temp.right.balance = Node.Code.LEFT;
+					this.replaceChild(level, temp);
+					return;
+				} else {
+					this.totalRotationCount += 2;
+					node.left.right = node.left.right.copy();
+					temp = node.doubleRightRotation(node, node.left.right, node.left);
+				}
+			}
+			this.replaceChild(level, temp);
+		}
+	}
+
+	/**
+	 * Copies node, hangs the copy where node was and records it as path[level].
+	 *
+	 * @param level
+	 * @param node
+	 * @return the copy
+	 */
+	private Node copyOnPath(int level, Node node) {
+		Node copy = node.copy();
+		this.replaceChild(level, copy);
+		this.path[level] = copy;
+		return copy;
+	}
+
+	/**
+	 * Hangs subtree where path[level] was: under path[level-1] on the side the
+	 * path went, or as the root when level is 0.
+	 *
+	 * @param level
+	 * @param subtree
+	 */
+	private void replaceChild(int level, Node subtree) {
+		if (level == 0) {
+			this.root = subtree;
+		} else if (this.wentLeft[level - 1]) {
+			this.path[level - 1].left = subtree;
+		} else {
+			this.path[level - 1].right = subtree;
+		}
+	}
+
+	/**
+	 * @param pos position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException if pos is negative or too big.
+	 */
+	@Override
+	public char get(int pos) throws IndexOutOfBoundsException {
+		if (this.size <= pos || pos < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		return this.root.get(pos);
+	}
+
+	/**
+	 * @param pos    location of the beginning of the string to retrieve
+	 * @param length length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
+	 *                                   legitimate indexes within this tree.
+	 */
+	@Override
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+		if (pos < 0 || length < 0 || length > this.size - pos) {
+			throw new IndexOutOfBoundsException();
+		}
+		char[] chars = new char[length];
+		this.root.getChars(pos, length, chars, 0);
+		return new String(chars);
+	}
+
+	/**
+	 * @return a new EditTree with the same shape and contents, which can be
+	 *         changed with all of EditTree's operations
+	 */
+	public EditTree toEditTree() {
+		EditTree tree = new EditTree();
+		tree.root = tree.copyTree(this.root);
+		return tree;
+	}
+
+	@Override
+	public int fastHeight() {
+		return this.root.fastHeight();
+	}
+
+	public int slowHeight() {
+		return this.root.slowHeight();
+	}
+
+	public int slowSize() {
+		return this.root.slowSize();
+	}
+
+	/**
+	 * @return number of rotations done in this tree, and the versions it was
+	 *         snapshotted from, since they were created.
+	 */
+	@Override
+	public int totalRotationCount() {
+		return this.totalRotationCount;
+	}
+
+	public boolean ranksMatchLeftSubtreeSize() {
+		return this.root.rankMatchLeftSubtreeSize().match;
+	}
+
+	public boolean balanceCodesAreCorrect() {
+		return this.root.balanceCodesAreCorrect().match;
+	}
+
+	/**
+	 * @return The string of elements and ranks, given in a pre-order traversal of
+	 *         the tree.
+	 */
+	public String toRankString() {
+		ArrayList<String> list = new ArrayList<String>();
+		this.root.toRankString(list);
+		return list.toString();
+	}
+
+	/**
+	 * @return The string of elements, ranks and balance codes, given in a
+	 *         pre-order traversal of the tree.
+	 */
+	public String toDebugString() {
+		ArrayList<String> list = new ArrayList<String>();
+		this.root.toDebugString(list);
+		return list.toString();
+	}
+}
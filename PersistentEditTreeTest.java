@@ -0,0 +1,62 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Regression tests for reading ranges out of the persistent and concurrent
+ * trees.
+ *
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+public class PersistentEditTreeTest {
+
+	@Test
+	public void testGetRangeFromPersistentTree() {
+		PersistentEditTree t = new PersistentEditTree("abcdefghij");
+		assertEquals("b", t.get(1, 1));
+		assertEquals("", t.get(4, 0));
+		assertEquals("abcdefghij", t.get(0, 10));
+		for (int pos = 0; pos <= 10; pos++) {
+			for (int length = 0; pos + length <= 10; length++) {
+				assertEquals("abcdefghij".substring(pos, pos + length), t.get(pos, length));
+			}
+		}
+	}
+
+	@Test
+	public void testGetRangeAfterPersistentEdits() {
+		PersistentEditTree t = new PersistentEditTree("abcdefghij");
+		PersistentEditTree before = t.snapshot();
+		t.add('X', 3);
+		t.delete(0);
+		assertEquals("bcX", t.get(0, 3));
+		assertEquals("abc", before.get(0, 3));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGetNegativeLengthFromPersistentTree() {
+		new PersistentEditTree("abcdefghij").get(5, -1);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGetPastEndFromPersistentTree() {
+		new PersistentEditTree("abcdefghij").get(3, Integer.MAX_VALUE);
+	}
+
+	@Test
+	public void testGetRangeFromConcurrentTree() {
+		ConcurrentEditTree t = new ConcurrentEditTree("abcdefghij");
+		assertEquals("b", t.get(1, 1));
+		t.add('X', 2);
+		assertEquals("bX", t.get(1, 2));
+		assertEquals("abXcdefghij", t.snapshot().get(0, 11));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGetNegativeLengthFromConcurrentTree() {
+		new ConcurrentEditTree("abcdefghij").get(5, -1);
+	}
+}
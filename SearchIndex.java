@@ -0,0 +1,184 @@
+package editortrees;
+
+/**
+ * The occurrences of one pattern in an EditTree, kept up to date as the tree is
+ * edited. Each subtree summarizes its text as the number of occurrences wholly
+ * inside it together with its first and last pattern.length()-1 characters, so
+ * that joining two subtrees only has to look for occurrences that cross the
+ * join. The tree keeps these summaries like any other Summary, so an edit only
+ * makes the ones on its path again, and count, get and indexOf each walk down
+ * the tree once instead of scanning the text. Occurrences may overlap.
+ *
+ * Use EditTree.searchIndex to make an index, and close it when it is no longer
+ * needed. Until then every subtree holds its summary, which is O(N*m) memory
+ * for a pattern of length m.
+ *
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+public class SearchIndex implements AutoCloseable {
+
+	private final EditTree tree;
+	private final String pattern;
+	private final Summary<Run> kind;
+
+	/**
+	 * The occurrences wholly inside a run of characters, and the characters at its
+	 * ends that could be part of an occurrence crossing into a neighboring run.
+	 * head and tail are the whole run when it is shorter than pattern.length()-1.
+	 */
+	private static final class Run {
+		final int count;
+		final String head, tail;
+
+		Run(int count, String head, String tail) {
+			this.count = count;
+			this.head = head;
+			this.tail = tail;
+		}
+	}
+
+	/**
+	 * Use EditTree.searchIndex(pattern) to make an index.
+	 *
+	 * @param tree
+	 * @param pattern
+	 * @throws IllegalArgumentException if pattern is empty
+	 */
+	SearchIndex(EditTree tree, String pattern) throws IllegalArgumentException {
+		if (pattern.isEmpty()) {
+			throw new IllegalArgumentException("cannot index an empty pattern");
+		}
+		this.tree = tree;
+		this.pattern = pattern;
+		int ends = pattern.length() - 1;
+		Run empty = new Run(0, "", "");
+		// most text is ASCII, so its runs of one character are shared
+		Run[] ascii = new Run[128];
+		for (char ch = 0; ch < ascii.length; ch++) {
+			String run = ends == 0 ? "" : String.valueOf(ch);
+			ascii[ch] = new Run(ends == 0 && ch == pattern.charAt(0) ? 1 : 0, run, run);
+		}
+		this.kind = new Summary<Run>() {
+			@Override
+			public Run identity() {
+				return empty;
+			}
+
+			@Override
+			public Run of(char ch) {
+				if (ch < ascii.length) {
+					return ascii[ch];
+				} else if (ends == 0) {
+					return ch == pattern.charAt(0) ? new Run(1, "", "") : empty;
+				}
+				String run = String.valueOf(ch);
+				return new Run(0, run, run);
+			}
+
+			@Override
+			public Run combine(Run before, Run after) {
+				// an occurrence crossing the join starts in before's tail and ends
+				// in after's head, which are both shorter than the pattern
+				int count = before.count + after.count;
+				int tailLength = before.tail.length();
+				// the occurrence starting at i needs the rest of the pattern to fit
+				// in after's head
+				int last = Math.min(tailLength - 1, tailLength + after.head.length() - pattern.length());
+				for (int i = 0; i <= last; i++) {
+					int inTail = tailLength - i;
+					if (before.tail.regionMatches(i, pattern, 0, inTail)
+							&& after.head.regionMatches(0, pattern, inTail, pattern.length() - inTail)) {
+						count++;
+					}
+				}
+				String head = before.head;
+				if (head.length() < ends) {
+					head = before.head + after.head;
+					head = head.substring(0, Math.min(ends, head.length()));
+				}
+				String tail = after.tail;
+				if (tail.length() < ends) {
+					tail = before.tail + after.tail;
+					tail = tail.substring(Math.max(0, tail.length() - ends));
+				}
+				return new Run(count, head, tail);
+			}
+		};
+		tree.addSummary(this.kind);
+	}
+
+	/**
+	 * @return the text this index finds
+	 */
+	public String pattern() {
+		return this.pattern;
+	}
+
+	/**
+	 * @return the number of occurrences of the pattern in the tree
+	 * @throws IllegalArgumentException if this index was closed
+	 */
+	public int count() throws IllegalArgumentException {
+		return this.tree.summary(this.kind).count;
+	}
+
+	/**
+	 * @param k which occurrence to find, counting from 0
+	 * @return the position of the k-th occurrence of the pattern
+	 * @throws IndexOutOfBoundsException if k is negative or not less than count()
+	 * @throws IllegalArgumentException  if this index was closed
+	 */
+	public int get(int k) throws IndexOutOfBoundsException, IllegalArgumentException {
+		if (k < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		// the shortest prefix holding k+1 occurrences ends with the k-th one
+		int end = this.tree.search(this.kind, run -> run.count > k);
+		if (end < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		return end - this.pattern.length();
+	}
+
+	/**
+	 * @param from position to start searching at. A negative from searches the
+	 *             whole tree.
+	 * @return the position of the first occurrence of the pattern at or after
+	 *         from, or -1 if there is none
+	 * @throws IllegalArgumentException if this index was closed
+	 */
+	public int indexOf(int from) throws IllegalArgumentException {
+		from = Math.max(from, 0);
+		if (from > this.tree.size()) {
+			return -1;
+		}
+		// the occurrences that start before from are the ones that end by
+		// from+pattern.length()-1
+		int before = this.tree.prefixSummary(this.kind,
+				Math.min(this.tree.size(), from + this.pattern.length() - 1)).count;
+		return before < this.count() ? this.get(before) : -1;
+	}
+
+	/**
+	 * @return the positions of all the occurrences of the pattern, in order
+	 * @throws IllegalArgumentException if this index was closed
+	 */
+	public int[] toArray() throws IllegalArgumentException {
+		int[] positions = new int[this.count()];
+		for (int k = 0; k < positions.length; k++) {
+			positions[k] = this.get(k);
+		}
+		return positions;
+	}
+
+	/**
+	 * Stops the tree from keeping this index and drops its summaries from every
+	 * node in O(N) time, which frees their memory without making the tree's other
+	 * summaries again. The index cannot be used afterwards.
+	 */
+	@Override
+	public void close() {
+		this.tree.removeSummary(this.kind);
+	}
+}
@@ -0,0 +1,36 @@
+package editortrees;
+
+/**
+ * A way to summarize a run of characters that an EditTree can keep for every
+ * subtree, such as a count of newlines, UTF-8 bytes or surrogate pairs, or the
+ * depth a run of brackets ends at. combine must be associative and identity
+ * must summarize no characters, so that the summary of a subtree can be made
+ * from its children's summaries however the tree happens to be shaped.
+ * Summaries are kept as values, so combine should return a new one rather than
+ * change either argument.
+ * 
+ * @param <S> type of the summaries
+ * 
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+public interface Summary<S> {
+
+	/**
+	 * @return the summary of no characters
+	 */
+	S identity();
+
+	/**
+	 * @param ch
+	 * @return the summary of the single character ch
+	 */
+	S of(char ch);
+
+	/**
+	 * @param before summary of some characters
+	 * @param after  summary of the characters just after them
+	 * @return the summary of the characters of before followed by those of after
+	 */
+	S combine(S before, S after);
+}
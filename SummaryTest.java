@@ -0,0 +1,397 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the summaries an EditTree keeps for its subtrees against summaries
+ * computed afresh from its text, after every kind of edit that moves nodes
+ * around: split, concatenate, insert, range delete, cursor edits and undo and
+ * redo.
+ *
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+public class SummaryTest {
+
+	/**
+	 * How deep a run of brackets ends up, and the lowest it gets, relative to
+	 * where it starts. Combining these is associative but not commutative.
+	 */
+	private static final class Depth {
+		final int end, min;
+
+		Depth(int end, int min) {
+			this.end = end;
+			this.min = min;
+		}
+	}
+
+	private static final Summary<Depth> DEPTH = new Summary<Depth>() {
+		@Override
+		public Depth identity() {
+			return new Depth(0, 0);
+		}
+
+		@Override
+		public Depth of(char ch) {
+			return ch == '(' ? new Depth(1, 0) : ch == ')' ? new Depth(-1, -1) : new Depth(0, 0);
+		}
+
+		@Override
+		public Depth combine(Depth before, Depth after) {
+			return new Depth(before.end + after.end, Math.min(before.min, before.end + after.min));
+		}
+	};
+
+	private static Depth depthOf(String s) {
+		int end = 0, min = 0;
+		for (int i = 0; i < s.length(); i++) {
+			end += s.charAt(i) == '(' ? 1 : s.charAt(i) == ')' ? -1 : 0;
+			min = Math.min(min, end);
+		}
+		return new Depth(end, min);
+	}
+
+	private static void assertDepth(Depth expected, Depth actual) {
+		assertEquals(expected.end, actual.end);
+		assertEquals(expected.min, actual.min);
+	}
+
+	private static String randomText(Random random, String alphabet, int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Makes one random edit to t, of any kind that moves nodes or summaries
+	 * around, using characters from alphabet.
+	 */
+	static void randomEdit(Random random, EditTree t, String alphabet) {
+		int size = t.size();
+		int pos = random.nextInt(size + 1);
+		switch (random.nextInt(10)) {
+		case 0:
+			t.add(alphabet.charAt(random.nextInt(alphabet.length())), pos);
+			break;
+		case 1:
+			if (size > 0) {
+				t.delete(random.nextInt(size));
+			}
+			break;
+		case 2:
+			t.delete(pos, random.nextInt(Math.min(30, size - pos) + 1));
+			break;
+		case 3:
+			t.insert(pos, randomText(random, alphabet, random.nextInt(40)));
+			break;
+		case 4:
+			// cut a piece out and paste it somewhere else
+			int to = pos + random.nextInt(size - pos + 1);
+			EditTree tail = t.split(to);
+			EditTree piece = t.split(pos);
+			t.concatenate(tail);
+			tail = t.split(random.nextInt(t.size() + 1));
+			t.concatenate(piece);
+			t.concatenate(tail);
+			break;
+		case 5:
+			t.concatenate(new EditTree(randomText(random, alphabet, random.nextInt(40))));
+			break;
+		case 6:
+			CharCursor cursor = t.cursor(pos);
+			for (int i = random.nextInt(5); i > 0; i--) {
+				if (cursor.hasNext() && random.nextBoolean()) {
+					cursor.delete();
+				} else {
+					cursor.insert(alphabet.charAt(random.nextInt(alphabet.length())));
+				}
+			}
+			break;
+		case 7:
+			if (t.history().canUndo()) {
+				t.history().undo();
+			}
+			break;
+		case 8:
+			if (t.history().canRedo()) {
+				t.history().redo();
+			}
+			break;
+		default:
+			t.history().closeRun();
+			break;
+		}
+	}
+
+	/**
+	 * @return a tree with history recorded, so that randomEdit can undo and redo
+	 */
+	static EditTree newTree(Random random, String alphabet) {
+		EditTree t = new EditTree(randomText(random, alphabet, 200));
+		t.recordHistory(true);
+		return t;
+	}
+
+	@Test
+	public void testCustomSummaryAfterEdits() {
+		String alphabet = "(()))ab";
+		for (long seed = 0; seed < 5; seed++) {
+			Random random = new Random(seed);
+			EditTree t = newTree(random, alphabet);
+			t.addSummary(DEPTH);
+			for (int step = 0; step < 500; step++) {
+				randomEdit(random, t, alphabet);
+				String s = t.toString();
+				assertDepth(depthOf(s), t.summary(DEPTH));
+				int pos = random.nextInt(s.length() + 1);
+				int length = random.nextInt(s.length() - pos + 1);
+				assertDepth(depthOf(s.substring(0, pos)), t.prefixSummary(DEPTH, pos));
+				assertDepth(depthOf(s.substring(pos, pos + length)), t.summary(DEPTH, pos, length));
+				// the first time the depth drops below -k
+				int k = random.nextInt(5);
+				int expected = -1;
+				int depth = 0;
+				for (int i = 0; i < s.length() && expected < 0; i++) {
+					depth += s.charAt(i) == '(' ? 1 : s.charAt(i) == ')' ? -1 : 0;
+					if (depth < -k) {
+						expected = i + 1;
+					}
+				}
+				assertEquals(expected, t.search(DEPTH, run -> run.min < -k));
+			}
+		}
+	}
+
+	@Test
+	public void testRemovedSummaryIsDropped() {
+		EditTree t = new EditTree("(a(b)c)");
+		t.addSummary(DEPTH);
+		assertDepth(new Depth(0, 0), t.summary(DEPTH));
+		t.removeSummary(DEPTH);
+		try {
+			t.summary(DEPTH);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		// adding it back makes the summaries again from the text
+		t.delete(0);
+		t.addSummary(DEPTH);
+		assertDepth(new Depth(-1, -1), t.summary(DEPTH));
+	}
+
+	/**
+	 * @return the UTF-8 length of s, counting an unpaired surrogate as three bytes
+	 *         the way Utf8Length does
+	 */
+	private static long utf8Length(String s) {
+		long bytes = 0;
+		for (int i = 0; i < s.length();) {
+			int codePoint = s.codePointAt(i);
+			bytes += codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+			i += Character.charCount(codePoint);
+		}
+		return bytes;
+	}
+
+	private static void checkUtf8(String s, EditTree t, Random random) {
+		assertEquals(utf8Length(s), t.utf8Length());
+		assertEquals(s.codePointCount(0, s.length()), t.codePointCount());
+		int pos = random.nextInt(s.length() + 1);
+		assertEquals(utf8Length(s.substring(0, pos)), t.utf8OffsetOf(pos));
+		assertEquals(s.codePointCount(0, pos), t.codePointOffsetOf(pos));
+		int codePoints = random.nextInt(s.codePointCount(0, s.length()) + 1);
+		assertEquals(s.offsetByCodePoints(0, codePoints), t.offsetOfCodePoint(codePoints));
+		// the character holding a byte starts at or before it and ends after it
+		long bytes = (long) (random.nextDouble() * (utf8Length(s) + 1));
+		int holder = t.offsetOfUtf8(bytes);
+		if (bytes == utf8Length(s)) {
+			assertEquals(s.length(), holder);
+		} else {
+			int next = s.offsetByCodePoints(holder, 1);
+			assertTrue(utf8Length(s.substring(0, holder)) <= bytes);
+			assertTrue(utf8Length(s.substring(0, next)) > bytes);
+		}
+	}
+
+	@Test
+	public void testUtf8LengthAfterEdits() {
+		// lone high and low surrogates, so that pairs form and break as text moves
+		String alphabet = "a\u00e9\u4e2d\n\uD83D\uDE00\uD83D\uDE00";
+		for (long seed = 0; seed < 5; seed++) {
+			Random random = new Random(seed);
+			EditTree t = newTree(random, alphabet);
+			for (int step = 0; step < 500; step++) {
+				randomEdit(random, t, alphabet);
+				checkUtf8(t.toString(), t, random);
+			}
+		}
+	}
+
+	@Test
+	public void testSurrogatePairAcrossSplit() {
+		EditTree t = new EditTree("ab\uD83D\uDE00cd");
+		assertEquals(8, t.utf8Length());
+		assertEquals(5, t.codePointCount());
+		// split between the two halves of the pair
+		EditTree rest = t.split(3);
+		assertEquals(5, t.utf8Length());
+		assertEquals(3, t.codePointCount());
+		assertEquals(5, rest.utf8Length());
+		assertEquals(3, rest.codePointCount());
+		t.concatenate(rest);
+		assertEquals(8, t.utf8Length());
+		assertEquals(5, t.codePointCount());
+		assertEquals(2, t.offsetOfUtf8(4));
+		assertEquals(4, t.offsetOfCodePoint(3));
+	}
+
+	@Test
+	public void testSurrogatePairJoinedFromTwoTrees() {
+		for (int length = 1; length < 200; length += 17) {
+			String before = randomText(new Random(length), "x", length) + "\uD83D";
+			String after = "\uDE00" + randomText(new Random(length), "y", 200 - length);
+			EditTree t = new EditTree(before);
+			t.concatenate(new EditTree(after));
+			assertEquals(utf8Length(before + after), t.utf8Length());
+			assertEquals(length + 4 + 200 - length, t.utf8Length());
+			// the pair's four bytes all belong to its first char
+			assertEquals(length, t.offsetOfUtf8(length));
+			assertEquals(length, t.offsetOfUtf8(length + 3));
+			assertEquals(length + 2, t.offsetOfUtf8(length + 4));
+		}
+	}
+
+	@Test
+	public void testSurrogatePairTypedInTwoHalves() {
+		EditTree t = new EditTree("abcdefgh");
+		t.add('\uDE00', 4);
+		assertEquals(11, t.utf8Length());
+		t.add('\uD83D', 4);
+		assertEquals(12, t.utf8Length());
+		assertEquals(9, t.codePointCount());
+		t.delete(5);
+		assertEquals(11, t.utf8Length());
+	}
+
+	/**
+	 * @return the positions of every occurrence of pattern in s, overlapping ones
+	 *         included
+	 */
+	private static int[] occurrences(String s, String pattern) {
+		int count = 0;
+		for (int i = s.indexOf(pattern); i >= 0; i = s.indexOf(pattern, i + 1)) {
+			count++;
+		}
+		int[] positions = new int[count];
+		count = 0;
+		for (int i = s.indexOf(pattern); i >= 0; i = s.indexOf(pattern, i + 1)) {
+			positions[count++] = i;
+		}
+		return positions;
+	}
+
+	@Test
+	public void testSearchIndexAfterEdits() {
+		String alphabet = "aaab\n";
+		String[] patterns = { "a", "aa", "aba", "abab", "aaaaa" };
+		for (long seed = 0; seed < 5; seed++) {
+			Random random = new Random(seed);
+			EditTree t = newTree(random, alphabet);
+			SearchIndex[] indexes = new SearchIndex[patterns.length];
+			for (int i = 0; i < patterns.length; i++) {
+				indexes[i] = t.searchIndex(patterns[i]);
+			}
+			for (int step = 0; step < 300; step++) {
+				randomEdit(random, t, alphabet);
+				String s = t.toString();
+				for (SearchIndex index : indexes) {
+					int[] expected = occurrences(s, index.pattern());
+					assertEquals(expected.length, index.count());
+					assertTrue(Arrays.equals(expected, index.toArray()));
+					int from = random.nextInt(s.length() + 2) - 1;
+					assertEquals(s.indexOf(index.pattern(), Math.max(from, 0)), index.indexOf(from));
+					assertEquals(s.indexOf(index.pattern(), Math.max(from, 0)), t.indexOf(index.pattern(), from));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testOverlappingMatches() {
+		EditTree t = new EditTree("aaaaa");
+		SearchIndex index = t.searchIndex("aa");
+		assertEquals(4, index.count());
+		assertTrue(Arrays.equals(new int[] { 0, 1, 2, 3 }, index.toArray()));
+		// a match that crosses the join between two trees
+		t.concatenate(new EditTree("bab"));
+		assertEquals(4, index.count());
+		SearchIndex crossing = t.searchIndex("aba");
+		assertEquals(1, crossing.count());
+		assertEquals(4, crossing.get(0));
+		t.insert(5, "a");
+		assertEquals(5, index.count());
+		assertEquals(1, crossing.count());
+		assertEquals(5, crossing.get(0));
+		assertEquals(-1, crossing.indexOf(6));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testClosedSearchIndex() {
+		EditTree t = new EditTree("abcabc");
+		SearchIndex index = t.searchIndex("bc");
+		assertEquals(2, index.count());
+		index.close();
+		index.count();
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testSearchIndexGetPastCount() {
+		new EditTree("abcabc").searchIndex("bc").get(2);
+	}
+
+	@Test
+	public void testFingerprintsAfterEdits() {
+		String alphabet = "ab\n\u00e9";
+		for (long seed = 0; seed < 5; seed++) {
+			Random random = new Random(seed);
+			EditTree t = newTree(random, alphabet);
+			for (int step = 0; step < 300; step++) {
+				randomEdit(random, t, alphabet);
+				String s = t.toString();
+				// the same text hashes the same however its tree was built
+				assertEquals(new EditTree(s).contentHash(), t.contentHash());
+				int pos = random.nextInt(s.length() + 1);
+				int length = random.nextInt(s.length() - pos + 1);
+				String range = s.substring(pos, pos + length);
+				EditTree copy = new EditTree();
+				for (int i = 0; i < range.length(); i++) {
+					copy.add(range.charAt(i));
+				}
+				assertEquals(copy.contentHash(), t.hash(pos, length));
+				assertTrue(t.contentEquals(new EditTree(s)));
+				// a tree that differs from t in one character
+				if (s.length() > 0) {
+					int changed = random.nextInt(s.length());
+					EditTree other = new EditTree(s);
+					other.delete(changed);
+					other.add(s.charAt(changed) == 'a' ? 'b' : 'a', changed);
+					assertFalse(t.contentEquals(other));
+					assertEquals(changed, t.commonPrefixLength(other));
+					assertEquals(s.length() - changed - 1, t.commonSuffixLength(other));
+				}
+			}
+		}
+	}
+}
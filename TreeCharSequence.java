@@ -0,0 +1,73 @@
+package editortrees;
+
+/**
+ * A CharSequence view of part of an EditTree, so that regex and parsing
+ * libraries can read the tree without it being copied into a String. charAt
+ * keeps a cursor at the last character it read, so reading forward or backward
+ * one character at a time is O(1) amortized, and subSequence makes another view
+ * of the same tree rather than copying.
+ *
+ * The bounds of the view are fixed when it is made, so it is meant to be used
+ * while the tree is not being edited.
+ *
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+class TreeCharSequence implements CharSequence {
+
+	private final EditTree tree;
+	private final int start, end;
+	// made on the first charAt, and walked down again whenever the tree has
+	// changed since
+	private CharCursor cursor;
+
+	/**
+	 * Use EditTree.asCharSequence to make a view.
+	 *
+	 * @param tree
+	 * @param start position in tree of the first character of the view
+	 * @param end   position in tree just past the last character of the view
+	 */
+	TreeCharSequence(EditTree tree, int start, int end) {
+		this.tree = tree;
+		this.start = start;
+		this.end = end;
+	}
+
+	@Override
+	public int length() {
+		return this.end - this.start;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= this.length()) {
+			throw new IndexOutOfBoundsException();
+		}
+		int pos = this.start + index;
+		if (this.cursor == null) {
+			this.cursor = this.tree.cursor(pos);
+		} else if (this.cursor.isStale()) {
+			// catch up with edits by walking down from the root once
+			this.cursor.resync(pos);
+		} else {
+			// nearby reads, including reading the last character again, only move
+			// the cursor a short way
+			this.cursor.moveTo(pos);
+		}
+		return this.cursor.nextChar();
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > this.length() || start > end) {
+			throw new IndexOutOfBoundsException();
+		}
+		return new TreeCharSequence(this.tree, this.start + start, this.start + end);
+	}
+
+	@Override
+	public String toString() {
+		return this.tree.get(this.start, this.length());
+	}
+}
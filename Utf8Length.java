@@ -0,0 +1,78 @@
+package editortrees;
+
+/**
+ * The UTF-8 length and number of code points of a run of characters, kept for
+ * each subtree of an EditTree so that char, code point and byte offsets can be
+ * turned into each other in O(log N) time. A surrogate pair is one code point
+ * of four bytes. It can be split between two subtrees, so each length also
+ * says whether its run starts with a low surrogate or ends with a high one,
+ * and combining two lengths where those meet makes a pair of them. An unpaired
+ * surrogate counts as one code point of three bytes, as it would be in the
+ * generalized UTF-8 some editors use, although writeTo refuses to encode one.
+ * 
+ * @author Brian Beasley
+ * @author Blaise Swartwood
+ */
+final class Utf8Length {
+
+	static final Summary<Utf8Length> KIND = new Summary<Utf8Length>() {
+		@Override
+		public Utf8Length identity() {
+			return EMPTY;
+		}
+
+		@Override
+		public Utf8Length of(char ch) {
+			if (ch < 0x80) {
+				return ONE_BYTE;
+			} else if (ch < 0x800) {
+				return TWO_BYTES;
+			} else if (Character.isHighSurrogate(ch)) {
+				return HIGH_SURROGATE;
+			} else if (Character.isLowSurrogate(ch)) {
+				return LOW_SURROGATE;
+			}
+			return THREE_BYTES;
+		}
+
+		@Override
+		public Utf8Length combine(Utf8Length before, Utf8Length after) {
+			if (before.chars == 0) {
+				return after;
+			} else if (after.chars == 0) {
+				return before;
+			}
+			long bytes = before.bytes + after.bytes;
+			int codePoints = before.codePoints + after.codePoints;
+			if (before.endsWithHighSurrogate && after.startsWithLowSurrogate) {
+				// two lone surrogates of three bytes each become one four-byte pair
+				bytes -= 2;
+				codePoints--;
+			}
+			return new Utf8Length(before.chars + after.chars, codePoints, bytes, before.startsWithLowSurrogate,
+					after.endsWithHighSurrogate);
+		}
+	};
+
+	private static final Utf8Length EMPTY = new Utf8Length(0, 0, 0, false, false);
+	private static final Utf8Length ONE_BYTE = new Utf8Length(1, 1, 1, false, false);
+	private static final Utf8Length TWO_BYTES = new Utf8Length(1, 1, 2, false, false);
+	private static final Utf8Length THREE_BYTES = new Utf8Length(1, 1, 3, false, false);
+	private static final Utf8Length HIGH_SURROGATE = new Utf8Length(1, 1, 3, false, true);
+	private static final Utf8Length LOW_SURROGATE = new Utf8Length(1, 1, 3, true, false);
+
+	final int chars;
+	final int codePoints;
+	final long bytes;
+	final boolean startsWithLowSurrogate;
+	final boolean endsWithHighSurrogate;
+
+	private Utf8Length(int chars, int codePoints, long bytes, boolean startsWithLowSurrogate,
+			boolean endsWithHighSurrogate) {
+		this.chars = chars;
+		this.codePoints = codePoints;
+		this.bytes = bytes;
+		this.startsWithLowSurrogate = startsWithLowSurrogate;
+		this.endsWithHighSurrogate = endsWithHighSurrogate;
+	}
+}